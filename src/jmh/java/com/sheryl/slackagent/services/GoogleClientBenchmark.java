@@ -0,0 +1,55 @@
+package com.sheryl.slackagent.services;
+
+import com.google.api.client.auth.oauth2.BearerToken;
+import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.googleapis.auth.oauth2.GoogleAuthorizationCodeFlow;
+import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.services.gmail.GmailScopes;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Cost of building Google clients from a cached credential, against building transport and flow per request
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GoogleClientBenchmark {
+
+    private GmailAuthService gmailAuthService;
+    private Credential credential;
+
+    @Setup
+    public void setup() throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        gmailAuthService = new GmailAuthService(new RedisDataStoreFactory(null), new GoogleApiMetrics(registry),
+                new ConcurrencyLimits(new StandardEnvironment(), registry), null, null);
+        credential = new Credential(BearerToken.authorizationHeaderAccessMethod()).setAccessToken("token");
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        gmailAuthService.shutdown();
+    }
+
+    @Benchmark
+    public Object buildClients() {
+        return gmailAuthService.buildClients("+15550000000", credential);
+    }
+
+    @Benchmark
+    public GoogleAuthorizationCodeFlow transportAndFlowPerRequest() throws Exception {
+        HttpTransport transport = GoogleNetHttpTransport.newTrustedTransport();
+        return new GoogleAuthorizationCodeFlow.Builder(transport, GsonFactory.getDefaultInstance(),
+                "client-id", "client-secret", List.of(GmailScopes.GMAIL_READONLY))
+                .setAccessType("offline")
+                .build();
+    }
+}
@@ -0,0 +1,101 @@
+package com.sheryl.slackagent.tools;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import com.google.api.services.gmail.model.Message;
+import com.google.api.services.gmail.model.MessagePart;
+import com.google.api.services.gmail.model.MessagePartHeader;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+// Per-request work in the tool layer. Run with: mvn -Pjmh verify -Djmh.args="ToolsBenchmark -prof gc"
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ToolsBenchmark {
+
+    private Message message;
+    private Event event;
+    private List<Map<String, Object>> messages;
+    private List<Map<String, String>> events;
+    private String body;
+
+    @Setup
+    public void setup() {
+        // A typical received message carries a few dozen headers, Subject and From well down the list
+        List<MessagePartHeader> headers = new ArrayList<>();
+        for (int i = 0; i < 18; i++) {
+            headers.add(new MessagePartHeader().setName("Received").setValue("from mail" + i + ".example.com by mx.google.com with ESMTPS id " + i));
+        }
+        headers.add(new MessagePartHeader().setName("DKIM-Signature").setValue("v=1; a=rsa-sha256; c=relaxed/relaxed; d=example.com; s=selector"));
+        headers.add(new MessagePartHeader().setName("From").setValue("Jane Doe <jane.doe@example.com>"));
+        headers.add(new MessagePartHeader().setName("To").setValue("me@example.com"));
+        headers.add(new MessagePartHeader().setName("Subject").setValue("Quarterly planning: agenda and notes"));
+        headers.add(new MessagePartHeader().setName("Date").setValue("Mon, 12 Oct 2026 09:30:00 +0000"));
+        message = new Message().setId("18f2c0a1b2c3d4e5").setPayload(new MessagePart().setHeaders(headers));
+
+        event = new Event()
+                .setId("evt123abc")
+                .setSummary("Design review")
+                .setDescription("Walk through the new onboarding flow and agree on next steps.")
+                .setStart(new EventDateTime().setDateTime(new DateTime("2026-10-19T10:00:00.000+02:00")))
+                .setEnd(new EventDateTime().setDateTime(new DateTime("2026-10-19T11:00:00.000+02:00")));
+
+        messages = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            messages.add(Map.of(
+                    "id", "18f2c0a1b2c3d4e" + i,
+                    "from", "Sender " + i + " <sender" + i + "@example.com>",
+                    "subject", "Subject line number " + i + " about something",
+                    "snippet", "Hi, just following up on the thread from last week, could you take a look at the attached ".repeat(2)));
+        }
+
+        events = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            events.add(CalendarTools.toMap(event, true));
+        }
+
+        body = "Hi Jane,\n\nThanks for the notes. I'll review them before Thursday and get back to you.\n\nBest,\nSheryl";
+    }
+
+    @Benchmark
+    public String headerSubject() {
+        return GmailTools.header(message, "Subject");
+    }
+
+    @Benchmark
+    public String headerMissing() {
+        return GmailTools.header(message, "Reply-To");
+    }
+
+    @Benchmark
+    public String rawMessage() throws Exception {
+        return GmailTools.rawMessage("jane.doe@example.com", "Re: Quarterly planning", body, null);
+    }
+
+    @Benchmark
+    public String rawReply() throws Exception {
+        return GmailTools.rawMessage("jane.doe@example.com", "Re: Quarterly planning", body, message.getId());
+    }
+
+    @Benchmark
+    public Map<String, String> eventToMap() {
+        return CalendarTools.toMap(event, true);
+    }
+
+    @Benchmark
+    public String encodeMessages() {
+        return ToolResults.encode(messages);
+    }
+
+    @Benchmark
+    public String encodeEvents() {
+        return ToolResults.encode(events);
+    }
+}
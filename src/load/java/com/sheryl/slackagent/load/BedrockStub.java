@@ -0,0 +1,106 @@
+package com.sheryl.slackagent.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Imitates POST /model/{modelId}/converse. Agent requests (the ones carrying a toolConfig) get one tool call
+// picked from the user's text, then a closing text reply once the tool result comes back.
+// ConverseStream is not imitated, so run the app with sheryl.whatsapp.delivery=tool.
+class BedrockStub extends StubServer {
+
+    private static final Pattern NUMBER = Pattern.compile("\\+\\d{6,}");
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    BedrockStub() throws IOException {
+        super("bedrock", 800);
+    }
+
+    @Override
+    protected String errorBody() {
+        return "{\"message\":\"Injected failure\"}";
+    }
+
+    @Override
+    protected Response handle(String method, String path, String query, byte[] body) throws Exception {
+        if (!path.endsWith("/converse")) return Response.json(404, "{\"message\":\"Only Converse is stubbed\"}");
+
+        JsonNode request = mapper.readTree(body);
+        JsonNode messages = request.path("messages");
+        JsonNode last = messages.get(messages.size() - 1);
+        int inputTokens = request.toString().length() / 4;
+
+        if (!request.has("toolConfig") || hasToolResult(last)) {
+            return reply(text("Done! ✅ Here's what I found."), "end_turn", inputTokens);
+        }
+
+        String text = text(last).toLowerCase(Locale.ROOT);
+        Matcher number = NUMBER.matcher(text(last));
+        String sender = number.find() ? number.group() : "+15550000000";
+
+        ObjectNode input = mapper.createObjectNode();
+        String tool;
+        if (text.contains("mail") || text.contains("inbox")) {
+            tool = "list_gmail_messages";
+            input.put("query", "from:boss@example.com").put("maxResults", 5).put("notifyNumber", sender);
+        } else if (text.contains("calendar") || text.contains("meeting") || text.contains("schedule")) {
+            tool = "search_calendar_events_advanced";
+            input.put("keyword", "launch").putNull("attendeeEmail").put("maxResults", 5).put("notifyNumber", sender);
+        } else {
+            tool = "whatsapp-message-tool";
+            input.put("to", sender).put("body", "Hey! 👋 I'm doing great, how can I help?");
+        }
+
+        ObjectNode toolUse = mapper.createObjectNode();
+        toolUse.putObject("toolUse")
+                .put("toolUseId", "tooluse_" + UUID.randomUUID().toString().replace("-", ""))
+                .put("name", tool)
+                .set("input", input);
+        return reply(toolUse, "tool_use", inputTokens);
+    }
+
+    private Response reply(ObjectNode content, String stopReason, int inputTokens) throws Exception {
+        ObjectNode response = mapper.createObjectNode();
+        ObjectNode message = response.putObject("output").putObject("message");
+        message.put("role", "assistant");
+        message.putArray("content").add(content);
+        response.put("stopReason", stopReason);
+        response.putObject("usage")
+                .put("inputTokens", inputTokens)
+                .put("outputTokens", 40)
+                .put("totalTokens", inputTokens + 40);
+        response.putObject("metrics").put("latencyMs", 0);
+        return Response.json(200, mapper.writeValueAsString(response));
+    }
+
+    private ObjectNode text(String text) {
+        ObjectNode block = mapper.createObjectNode();
+        block.put("text", text);
+        return block;
+    }
+
+    private static boolean hasToolResult(JsonNode message) {
+        for (JsonNode block : message.path("content")) {
+            if (block.has("toolResult")) return true;
+        }
+        return false;
+    }
+
+    private static String text(JsonNode message) {
+        StringBuilder text = new StringBuilder();
+        ArrayNode content = message.path("content") instanceof ArrayNode array ? array : null;
+        if (content == null) return "";
+        for (JsonNode block : content) {
+            if (block.has("text")) text.append(block.get("text").asText()).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,158 @@
+package com.sheryl.slackagent.load;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Imitates the Gmail v1 and Calendar v3 REST endpoints the tools use, including Gmail batch calls.
+// Every mailbox holds the same synthetic messages and every calendar the same synthetic events.
+// New mail can be delivered with deliver(); it shows up in the history and as unread inbox messages.
+class GoogleStub extends StubServer {
+
+    private static final int MESSAGES = 200;
+    private static final int EVENTS = 40;
+
+    private static final String BOUNDARY = "batch_sheryl_load";
+    private static final Pattern BATCHED_GET = Pattern.compile("GET [^ ]*/gmail/v1/users/[^/]+/messages/([^/?\\s]+)");
+    private static final Pattern MESSAGE_PATH = Pattern.compile("/gmail/v1/users/[^/]+/messages/([^/]+)(/modify)?");
+    private static final Pattern EVENT_PATH = Pattern.compile("/calendar/v3/calendars/[^/]+/events/([^/]+)");
+    private static final Pattern START_HISTORY_ID = Pattern.compile("startHistoryId=(\\d+)");
+
+    private final AtomicLong historyId = new AtomicLong(1000);
+
+    // History ID at which each delivered message arrived; its message ID is "n" + that ID
+    private final List<Long> delivered = new CopyOnWriteArrayList<>();
+
+    GoogleStub() throws IOException {
+        super("google", 80);
+    }
+
+    @Override
+    protected Response handle(String method, String path, String query, byte[] body) {
+        if (path.startsWith("/batch/gmail/v1")) return batch(new String(body, StandardCharsets.UTF_8));
+
+        if (path.endsWith("/profile")) {
+            return Response.json(200, "{\"emailAddress\":\"load@example.com\",\"historyId\":\"" + historyId.get() + "\"}");
+        }
+        if (path.endsWith("/history")) {
+            return Response.json(200, history(query));
+        }
+        if (path.endsWith("/watch")) {
+            return Response.json(200, "{\"historyId\":\"" + historyId.get() + "\",\"expiration\":\""
+                    + (System.currentTimeMillis() + 7 * 86_400_000L) + "\"}");
+        }
+        if (path.endsWith("/messages/send")) {
+            return Response.json(200, "{\"id\":\"" + UUID.randomUUID() + "\",\"threadId\":\"t1\",\"labelIds\":[\"SENT\"]}");
+        }
+        if (path.endsWith("/messages") && method.equals("GET")) {
+            return Response.json(200, messageList(query));
+        }
+
+        Matcher message = MESSAGE_PATH.matcher(path);
+        if (message.matches()) {
+            if (method.equals("DELETE")) return new Response(204, "application/json", new byte[0]);
+            return Response.json(200, message(message.group(1)));
+        }
+
+        if (path.endsWith("/events")) {
+            if (method.equals("POST")) return Response.json(200, event(UUID.randomUUID().toString(), 0));
+            return Response.json(200, eventList());
+        }
+        Matcher event = EVENT_PATH.matcher(path);
+        if (event.matches()) {
+            if (method.equals("DELETE")) return new Response(204, "application/json", new byte[0]);
+            return Response.json(200, event(event.group(1), 0));
+        }
+
+        return Response.json(404, "{\"error\":{\"code\":404,\"message\":\"Not stubbed: " + method + " " + path + "\"}}");
+    }
+
+    // Adds new unread messages to every mailbox and returns the history ID after them
+    long deliver(int count) {
+        for (int i = 0; i < count; i++) delivered.add(historyId.incrementAndGet());
+        return historyId.get();
+    }
+
+    private String history(String query) {
+        long start = Long.MAX_VALUE;
+        if (query != null) {
+            Matcher matcher = START_HISTORY_ID.matcher(query);
+            if (matcher.find()) start = Long.parseLong(matcher.group(1));
+        }
+        List<String> records = new ArrayList<>();
+        for (long id : delivered) {
+            if (id > start) {
+                records.add("{\"id\":\"" + id + "\",\"messagesAdded\":[{\"message\":{\"id\":\"n" + id
+                        + "\",\"threadId\":\"tn" + id + "\",\"labelIds\":[\"INBOX\",\"UNREAD\"]}}]}");
+            }
+        }
+        return "{" + (records.isEmpty() ? "" : "\"history\":[" + String.join(",", records) + "],")
+                + "\"historyId\":\"" + historyId.get() + "\"}";
+    }
+
+    private static String messageList(String query) {
+        int max = 100;
+        if (query != null) {
+            Matcher limit = Pattern.compile("maxResults=(\\d+)").matcher(query);
+            if (limit.find()) max = Integer.parseInt(limit.group(1));
+        }
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < Math.min(max, MESSAGES); i++) {
+            ids.add("{\"id\":\"m" + i + "\",\"threadId\":\"t" + i + "\"}");
+        }
+        return "{\"messages\":[" + String.join(",", ids) + "],\"resultSizeEstimate\":" + ids.size() + "}";
+    }
+
+    private static String message(String id) {
+        int n = Math.abs(id.hashCode() % 17);
+        return "{\"id\":\"" + id + "\",\"threadId\":\"t" + id + "\","
+                + "\"labelIds\":[\"INBOX\"" + (n % 3 == 0 || id.startsWith("n") ? ",\"UNREAD\"" : "") + "],"
+                + "\"snippet\":\"Hi, following up on the launch plan we discussed. Can you review before Friday?\","
+                + "\"internalDate\":\"" + (System.currentTimeMillis() - n * 3_600_000L) + "\","
+                + "\"payload\":{\"headers\":["
+                + "{\"name\":\"From\",\"value\":\"" + (n % 2 == 0 ? "Boss <boss@example.com>" : "Teammate " + n + " <t" + n + "@example.com>") + "\"},"
+                + "{\"name\":\"Subject\",\"value\":\"Launch update #" + n + "\"},"
+                + "{\"name\":\"Date\",\"value\":\"Mon, 12 Oct 2026 09:30:00 +0000\"}]}}";
+    }
+
+    private static String eventList() {
+        List<String> items = new ArrayList<>();
+        for (int i = 0; i < EVENTS; i++) items.add(event("e" + i, i));
+        return "{\"items\":[" + String.join(",", items) + "],\"nextSyncToken\":\"sync-" + System.nanoTime() + "\"}";
+    }
+
+    private static String event(String id, int offsetHours) {
+        Instant start = Instant.now().truncatedTo(ChronoUnit.HOURS).plus(offsetHours * 5L, ChronoUnit.HOURS);
+        return "{\"id\":\"" + id + "\",\"status\":\"confirmed\",\"summary\":\"" + (offsetHours % 4 == 0 ? "Launch sync" : "Team meeting " + offsetHours) + "\","
+                + "\"description\":\"Weekly check-in on the launch\",\"htmlLink\":\"https://calendar.example.com/" + id + "\","
+                + "\"start\":{\"dateTime\":\"" + start + "\"},\"end\":{\"dateTime\":\"" + start.plus(1, ChronoUnit.HOURS) + "\"},"
+                + "\"attendees\":[{\"email\":\"boss@example.com\"}]}";
+    }
+
+    // Answers each GET in a multipart/mixed batch with the message it asks for, in request order
+    private static Response batch(String body) {
+        StringBuilder out = new StringBuilder();
+        Matcher get = BATCHED_GET.matcher(body);
+        int part = 0;
+        while (get.find()) {
+            String json = message(get.group(1));
+            out.append("--").append(BOUNDARY).append("\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: <response-").append(++part).append(">\r\n\r\n")
+                    .append("HTTP/1.1 200 OK\r\n")
+                    .append("Content-Type: application/json; charset=UTF-8\r\n")
+                    .append("Content-Length: ").append(json.getBytes(StandardCharsets.UTF_8).length).append("\r\n\r\n")
+                    .append(json).append("\r\n");
+        }
+        out.append("--").append(BOUNDARY).append("--\r\n");
+        return new Response(200, "multipart/mixed; boundary=" + BOUNDARY, out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,116 @@
+package com.sheryl.slackagent.load;
+
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.util.store.DataStore;
+import com.sheryl.slackagent.SlackAgentApplication;
+import com.sheryl.slackagent.services.InboxWatcher;
+import com.sheryl.slackagent.services.RedisDataStoreFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Checks the inbox watcher end to end against the Google and Twilio stubs, with this class standing in for
+// Pub/Sub: bursts of new mail with a push each must produce exactly one WhatsApp digest per debounce window.
+// Needs Redis on REDIS_HOST:REDIS_PORT. Run with: mvn -Pload verify -Dload.main=com.sheryl.slackagent.load.InboxWatchTest
+public class InboxWatchTest {
+
+    private static final String USER = "+15557000001";
+
+    private final long debounceSeconds = Long.getLong("inbox.debounce-seconds", 5);
+    private final int pushes = Integer.getInteger("inbox.pushes", 5);
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private final Map<String, AtomicInteger> digests = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        new InboxWatchTest().run();
+    }
+
+    private void run() throws Exception {
+        try (BedrockStub bedrock = new BedrockStub();
+             GoogleStub google = new GoogleStub();
+             TwilioStub twilio = new TwilioStub(to -> digests.computeIfAbsent(to, key -> new AtomicInteger()).incrementAndGet())) {
+            bedrock.start();
+            google.start();
+            twilio.start();
+            System.setProperty("aws.endpointUrl", bedrock.url());
+
+            ConfigurableApplicationContext app = new SpringApplicationBuilder(SlackAgentApplication.class).run(
+                    "--server.port=0",
+                    "--spring.ai.bedrock.aws.region=us-east-1",
+                    "--spring.ai.bedrock.aws.access-key=load-test",
+                    "--spring.ai.bedrock.aws.secret-key=load-test",
+                    "--spring.ai.bedrock.converse.chat.options.model=load-test-model",
+                    "--logging.level.org.springframework.ai=WARN",
+                    "--twilio.account.sid=ACloadtest",
+                    "--twilio.auth.token=load-test",
+                    "--twilio.phone.from=+15550000000",
+                    "--twilio.api.base-url=" + twilio.url(),
+                    "--gmail.redirect.uri=http://localhost/callback",
+                    "--sheryl.google.root-url=" + google.url() + "/",
+                    "--sheryl.google.refresh-check-ms=3600000",
+                    "--sheryl.inbox.enabled=true",
+                    "--sheryl.inbox.mode=push",
+                    "--sheryl.inbox.topic=projects/load/topics/gmail",
+                    "--sheryl.inbox.push-token=load-test",
+                    "--sheryl.inbox.debounce-seconds=" + debounceSeconds);
+            try {
+                String pushUrl = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port") + "/api/inbox/push?token=load-test";
+
+                DataStore<StoredCredential> credentials = StoredCredential.getDefaultDataStore(app.getBean(RedisDataStoreFactory.class));
+                credentials.set(USER, new StoredCredential()
+                        .setAccessToken("load-test")
+                        .setExpirationTimeMilliseconds(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+                // The stub's history starts over on every run, so does the cursor
+                app.getBean(StringRedisTemplate.class).opsForHash().delete("sheryl:inbox:history", USER);
+                app.getBean(InboxWatcher.class).watch(USER);
+
+                window(google, pushUrl, 1);
+                window(google, pushUrl, 2);
+                System.out.println("✅ One digest per window for " + pushes + " pushes each");
+            } finally {
+                app.close();
+            }
+        }
+    }
+
+    // A burst of pushes early in one window (a push that finds another in progress is retried 2s later),
+    // then a wait for the window to close
+    private void window(GoogleStub google, String pushUrl, int expectedDigests) throws Exception {
+        for (int i = 0; i < pushes; i++) {
+            long historyId = google.deliver(2);
+            int status = push(pushUrl, historyId);
+            if (status != 204) throw new IllegalStateException("Push answered " + status);
+            Thread.sleep(200);
+        }
+        Thread.sleep(TimeUnit.SECONDS.toMillis(debounceSeconds) + 2000);
+
+        int received = digests.getOrDefault(USER, new AtomicInteger()).get();
+        if (received != expectedDigests) {
+            throw new IllegalStateException("Expected " + expectedDigests + " digests so far, got " + received);
+        }
+    }
+
+    // The envelope Pub/Sub posts to a push subscription
+    private int push(String pushUrl, long historyId) throws Exception {
+        String data = Base64.getEncoder().encodeToString(
+                ("{\"emailAddress\":\"load@example.com\",\"historyId\":" + historyId + "}").getBytes(StandardCharsets.UTF_8));
+        String envelope = "{\"message\":{\"data\":\"" + data + "\",\"messageId\":\"" + historyId + "\"},"
+                + "\"subscription\":\"projects/load/subscriptions/gmail-push\"}";
+        return http.send(HttpRequest.newBuilder(URI.create(pushUrl))
+                .POST(HttpRequest.BodyPublishers.ofString(envelope))
+                .header("Content-Type", "application/json")
+                .build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+    }
+}
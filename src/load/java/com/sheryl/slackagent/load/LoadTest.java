@@ -0,0 +1,237 @@
+package com.sheryl.slackagent.load;
+
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.util.store.DataStore;
+import com.sheryl.slackagent.SlackAgentApplication;
+import com.sheryl.slackagent.services.RedisDataStoreFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Boots Sheryl against local stubs for Bedrock, Google and Twilio and drives an open-model load at a fixed rate.
+// Needs Redis on REDIS_HOST:REDIS_PORT. Run with: mvn -Pload verify -Dload.rate=20 -Dload.duration-seconds=60
+//
+// Reports throughput, latency percentiles (webhook ack, WhatsApp first reply, synchronous /sheryl) and
+// outbound calls per inbound message for each stubbed API.
+public class LoadTest {
+
+    private static final List<String> MESSAGES = List.of(
+            "any unread emails?",
+            "what's on my calendar today",
+            "check emails from my boss",
+            "do I have any meetings about the launch",
+            "hi sheryl, how are you?",
+            "mark that as read",
+            "can you look through my mail for the launch plan",
+            "what's my schedule looking like this week"
+    );
+
+    private final double rate = Double.parseDouble(System.getProperty("load.rate", "10"));
+    private final long durationSeconds = Long.getLong("load.duration-seconds", 60);
+    private final int users = Integer.getInteger("load.users", 50);
+    private final double syncRatio = Double.parseDouble(System.getProperty("load.sync-ratio", "0.1"));
+    private final long drainSeconds = Long.getLong("load.drain-seconds", 30);
+
+    private final HttpClient http = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+
+    // Send times of WhatsApp messages still waiting for their first reply, per user
+    private final Map<String, Deque<Long>> awaitingReply = new ConcurrentHashMap<>();
+
+    private final Queue<Long> ackLatencies = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> replyLatencies = new ConcurrentLinkedQueue<>();
+    private final Queue<Long> syncLatencies = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        new LoadTest().run();
+    }
+
+    private void run() throws Exception {
+        try (BedrockStub bedrock = new BedrockStub();
+             GoogleStub google = new GoogleStub();
+             TwilioStub twilio = new TwilioStub(this::delivered)) {
+            bedrock.start();
+            google.start();
+            twilio.start();
+
+            // The AWS SDK picks this up for every client it builds, the Bedrock runtime ones included
+            System.setProperty("aws.endpointUrl", bedrock.url());
+
+            ConfigurableApplicationContext app = new SpringApplicationBuilder(SlackAgentApplication.class).run(
+                    "--server.port=0",
+                    "--spring.ai.bedrock.aws.region=us-east-1",
+                    "--spring.ai.bedrock.aws.access-key=load-test",
+                    "--spring.ai.bedrock.aws.secret-key=load-test",
+                    "--spring.ai.bedrock.converse.chat.options.model=load-test-model",
+                    "--logging.level.org.springframework.ai=WARN",
+                    "--twilio.account.sid=ACloadtest",
+                    "--twilio.auth.token=load-test",
+                    "--twilio.phone.from=+15550000000",
+                    "--twilio.api.base-url=" + twilio.url(),
+                    "--gmail.redirect.uri=http://localhost/callback",
+                    "--sheryl.google.root-url=" + google.url() + "/",
+                    "--sheryl.google.refresh-check-ms=3600000",
+                    "--sheryl.whatsapp.delivery=tool");
+            String baseUrl = "http://127.0.0.1:" + app.getEnvironment().getProperty("local.server.port") + "/sheryl";
+
+            List<String> numbers = seedUsers(app);
+
+            long[] before = {bedrock.calls(), google.calls(), twilio.calls()};
+            long started = System.nanoTime();
+            drive(baseUrl, numbers);
+            long drivenNanos = System.nanoTime() - started;
+            drain();
+            long[] after = {bedrock.calls(), google.calls(), twilio.calls()};
+
+            report(drivenNanos, List.of(bedrock, google, twilio), before, after);
+            app.close();
+        }
+    }
+
+    // Stores a long-lived access token for each load user so the Google clients never try to refresh
+    private List<String> seedUsers(ConfigurableApplicationContext app) throws Exception {
+        DataStore<StoredCredential> credentials = StoredCredential.getDefaultDataStore(app.getBean(RedisDataStoreFactory.class));
+        List<String> numbers = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String number = "+1555" + String.format("%07d", i);
+            for (String user : List.of(number, syncUser(number))) {
+                credentials.set(user, new StoredCredential()
+                        .setAccessToken("load-test")
+                        .setExpirationTimeMilliseconds(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1)));
+            }
+            numbers.add(number);
+        }
+        return numbers;
+    }
+
+    // Synchronous requests use their own numbers so their WhatsApp side effects don't count as replies
+    private static String syncUser(String number) {
+        return "+1556" + number.substring(5);
+    }
+
+    private void drive(String baseUrl, List<String> numbers) throws InterruptedException {
+        long total = (long) (rate * durationSeconds);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        System.out.println("🚀 Sending " + total + " messages at " + rate + "/s from " + numbers.size() + " users");
+
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor();
+        CountDownLatch done = new CountDownLatch((int) total);
+        ticker.scheduleAtFixedRate(() -> {
+            if (done.getCount() == 0) return;
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            String number = numbers.get(random.nextInt(numbers.size()));
+            String text = MESSAGES.get(random.nextInt(MESSAGES.size()));
+            boolean sync = random.nextDouble() < syncRatio;
+            Thread.startVirtualThread(() -> send(baseUrl, number, text, sync));
+            sent.incrementAndGet();
+            done.countDown();
+        }, 0, intervalNanos, TimeUnit.NANOSECONDS);
+
+        done.await();
+        ticker.shutdownNow();
+    }
+
+    private void send(String baseUrl, String number, String text, boolean sync) {
+        try {
+            long start = System.nanoTime();
+            HttpResponse<String> response;
+            if (sync) {
+                response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "?sender=" + encode(syncUser(number))))
+                        .POST(HttpRequest.BodyPublishers.ofString(text))
+                        .header("Content-Type", "text/plain")
+                        .build(), HttpResponse.BodyHandlers.ofString());
+                if (response.statusCode() == 200) syncLatencies.add(System.nanoTime() - start);
+                else failed.incrementAndGet();
+                return;
+            }
+
+            Deque<Long> pending = awaitingReply.computeIfAbsent(number, key -> new ConcurrentLinkedDeque<>());
+            pending.addLast(start);
+            response = http.send(HttpRequest.newBuilder(URI.create(baseUrl + "/whatsapp-listen"))
+                    .POST(HttpRequest.BodyPublishers.ofString("From=" + encode("whatsapp:" + number) + "&Body=" + encode(text)
+                            + "&MessageSid=SM" + UUID.randomUUID().toString().replace("-", "")))
+                    .header("Content-Type", "application/x-www-form-urlencoded")
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            ackLatencies.add(System.nanoTime() - start);
+            if (response.statusCode() != 200) {
+                pending.remove(start);
+                if (response.statusCode() == 503) rejected.incrementAndGet();
+                else failed.incrementAndGet();
+            }
+        } catch (Exception e) {
+            failed.incrementAndGet();
+        }
+    }
+
+    // The first outbound message to a user after one of theirs counts as its reply
+    private void delivered(String number) {
+        Deque<Long> pending = awaitingReply.get(number);
+        Long sentAt = pending != null ? pending.pollFirst() : null;
+        if (sentAt != null) replyLatencies.add(System.nanoTime() - sentAt);
+    }
+
+    private void drain() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainSeconds);
+        while (System.nanoTime() < deadline && awaitingReply.values().stream().anyMatch(d -> !d.isEmpty())) {
+            Thread.sleep(200);
+        }
+    }
+
+    private void report(long drivenNanos, List<StubServer> stubs, long[] before, long[] after) {
+        double seconds = drivenNanos / 1e9;
+        long unanswered = awaitingReply.values().stream().mapToLong(Deque::size).sum();
+        long inbound = sent.get();
+
+        System.out.println();
+        System.out.println("===== Sheryl load test =====");
+        System.out.printf("Sent %d messages in %.1f s (%.1f/s offered), %d rejected (503), %d failed, %d WhatsApp messages without a reply%n",
+                inbound, seconds, inbound / seconds, rejected.get(), failed.get(), unanswered);
+        System.out.printf("Replies: %.1f/s%n", (replyLatencies.size() + syncLatencies.size()) / seconds);
+        printLatencies("Webhook ack", ackLatencies);
+        printLatencies("WhatsApp first reply", replyLatencies);
+        printLatencies("POST /sheryl", syncLatencies);
+
+        System.out.println("Outbound calls per inbound message:");
+        for (int i = 0; i < stubs.size(); i++) {
+            StubServer stub = stubs.get(i);
+            long calls = after[i] - before[i];
+            System.out.printf("  %-8s %6d calls  %.2f per message  (%d injected errors)%n",
+                    stub.name(), calls, inbound > 0 ? (double) calls / inbound : 0, stub.injectedErrors());
+        }
+    }
+
+    private static void printLatencies(String label, Collection<Long> nanos) {
+        if (nanos.isEmpty()) {
+            System.out.printf("%-22s no samples%n", label);
+            return;
+        }
+        long[] sorted = nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%-22s n=%-6d p50=%6d ms  p90=%6d ms  p99=%6d ms  max=%6d ms%n", label, sorted.length,
+                millis(sorted, 0.50), millis(sorted, 0.90), millis(sorted, 0.99), sorted[sorted.length - 1] / 1_000_000);
+    }
+
+    private static long millis(long[] sorted, double quantile) {
+        int index = (int) Math.ceil(quantile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1_000_000;
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,146 @@
+package com.sheryl.slackagent.load;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Measures cold start and resident memory of the packaged application, with and without the AOT and CDS
+// optimizations built by the aot profile. Each run starts a fresh JVM and stops it once the HTTP port answers.
+// Run with: mvn -Paot verify [-Dstartup.runs=5]
+public class StartupBenchmark {
+
+    private static final Pattern STARTED = Pattern.compile("Started \\S+ in ([\\d.]+) seconds \\(process running for ([\\d.]+)\\)");
+
+    private final Path jar = Path.of(System.getProperty("startup.jar"));
+    private final Path extractedJar = Path.of(System.getProperty("startup.extracted-jar"));
+    private final Path archive = Path.of(System.getProperty("startup.archive"));
+    private final List<String> appArgs = List.of(System.getProperty("startup.args", "").trim().split("\\s+"));
+    private final int runs = Integer.getInteger("startup.runs", 5);
+    private final String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    private record Run(long readyMillis, double springSeconds, long rssKb) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new StartupBenchmark().run();
+    }
+
+    private void run() throws Exception {
+        Map<String, List<String>> variants = new LinkedHashMap<>();
+        variants.put("fat jar", List.of("-jar", jar.toString()));
+        variants.put("extracted + AOT", List.of("-Dspring.aot.enabled=true", "-jar", extractedJar.toString()));
+        if (Files.exists(archive)) {
+            variants.put("extracted + AOT + CDS", List.of("-XX:SharedArchiveFile=" + archive, "-Dspring.aot.enabled=true",
+                    "-jar", extractedJar.toString()));
+        } else {
+            System.err.println("⚠️ No CDS archive at " + archive + ", skipping that variant");
+        }
+
+        Map<String, List<Run>> results = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> variant : variants.entrySet()) {
+            List<Run> measured = new ArrayList<>();
+            // The first start warms the OS page cache and is not counted
+            start(variant.getValue());
+            for (int i = 0; i < runs; i++) measured.add(start(variant.getValue()));
+            results.put(variant.getKey(), measured);
+        }
+
+        System.out.println();
+        System.out.println("==== Startup (median of " + runs + " runs) ====");
+        System.out.printf("%-24s %12s %14s %10s%n", "variant", "ready (ms)", "spring (s)", "RSS (MB)");
+        for (Map.Entry<String, List<Run>> result : results.entrySet()) {
+            List<Run> measured = result.getValue();
+            System.out.printf("%-24s %12d %14.2f %10d%n", result.getKey(),
+                    median(measured.stream().mapToLong(Run::readyMillis).toArray()),
+                    median(measured.stream().mapToLong(r -> Math.round(r.springSeconds() * 1000)).toArray()) / 1000.0,
+                    median(measured.stream().mapToLong(Run::rssKb).toArray()) / 1024);
+        }
+    }
+
+    // Starts the application and waits until its HTTP port answers, then samples RSS and stops it
+    private Run start(List<String> jvmArgs) throws Exception {
+        int port = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(java);
+        command.addAll(jvmArgs);
+        command.addAll(appArgs);
+        command.add("--server.port=" + port);
+
+        long startedAt = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        double[] springSeconds = {Double.NaN};
+        Thread.ofVirtual().start(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    Matcher matcher = STARTED.matcher(line);
+                    if (matcher.find()) springSeconds[0] = Double.parseDouble(matcher.group(2));
+                }
+            } catch (IOException ignored) {
+                // Process stopped
+            }
+        });
+
+        try {
+            HttpRequest probe = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/actuator/health"))
+                    .timeout(Duration.ofSeconds(1))
+                    .build();
+            long deadline = System.nanoTime() + Duration.ofMinutes(2).toNanos();
+            while (true) {
+                if (!process.isAlive()) throw new IllegalStateException("Application exited with code " + process.exitValue());
+                if (System.nanoTime() > deadline) throw new IllegalStateException("Application did not start within 2 minutes");
+                try {
+                    // Any status will do: health is DOWN without Redis, but the server is up
+                    http.send(probe, HttpResponse.BodyHandlers.discarding());
+                    break;
+                } catch (IOException notYet) {
+                    Thread.sleep(10);
+                }
+            }
+            long readyMillis = (System.nanoTime() - startedAt) / 1_000_000;
+            long rssKb = rssKb(process.pid());
+            // Spring logs its timing just after the port opens
+            Thread.sleep(200);
+            return new Run(readyMillis, springSeconds[0], rssKb);
+        } finally {
+            process.destroy();
+            process.waitFor();
+        }
+    }
+
+    // Resident set size from /proc; 0 where that is not available
+    private static long rssKb(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (line.startsWith("VmRSS:")) return Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        } catch (IOException ignored) {
+            // Not Linux
+        }
+        return 0;
+    }
+
+    private static long median(long[] values) {
+        Arrays.sort(values);
+        return values.length == 0 ? 0 : values[values.length / 2];
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
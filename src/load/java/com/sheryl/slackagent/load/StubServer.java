@@ -0,0 +1,123 @@
+package com.sheryl.slackagent.load;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Local stand-in for an external API with injected latency and errors.
+// Settings are read from system properties: load.<name>.latency-ms, load.<name>.jitter-ms, load.<name>.error-rate
+abstract class StubServer implements AutoCloseable {
+
+    record Response(int status, String contentType, byte[] body) {
+
+        static Response json(int status, String json) {
+            return new Response(status, "application/json; charset=UTF-8", json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private final String name;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong injectedErrors = new AtomicLong();
+
+    StubServer(String name, long defaultLatencyMillis) throws IOException {
+        this.name = name;
+        this.latencyMillis = Long.getLong("load." + name + ".latency-ms", defaultLatencyMillis);
+        this.jitterMillis = Long.getLong("load." + name + ".jitter-ms", defaultLatencyMillis / 4);
+        this.errorRate = Double.parseDouble(System.getProperty("load." + name + ".error-rate", "0"));
+
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.server.setExecutor(executor);
+        this.server.createContext("/", this::serve);
+    }
+
+    protected abstract Response handle(String method, String path, String query, byte[] body) throws Exception;
+
+    // Body returned with an injected 503
+    protected String errorBody() {
+        return "{\"error\":{\"code\":503,\"message\":\"Injected failure\"}}";
+    }
+
+    void start() {
+        server.start();
+        System.out.println("🧪 " + name + " stub on " + url() + " (latency " + latencyMillis + "±" + jitterMillis
+                + " ms, error rate " + errorRate + ")");
+    }
+
+    String name() {
+        return name;
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    long calls() {
+        return calls.get();
+    }
+
+    long injectedErrors() {
+        return injectedErrors.get();
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        calls.incrementAndGet();
+        try (exchange) {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            sleep(latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(-jitterMillis, jitterMillis + 1) : 0));
+
+            Response response;
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.incrementAndGet();
+                response = Response.json(503, errorBody());
+            } else {
+                try {
+                    response = handle(exchange.getRequestMethod(), exchange.getRequestURI().getPath(),
+                            exchange.getRequestURI().getRawQuery(), body);
+                } catch (Exception e) {
+                    System.err.println("❌ " + name + " stub failed on " + exchange.getRequestURI() + ": " + e);
+                    response = Response.json(500, "{\"error\":{\"code\":500,\"message\":\"Stub error\"}}");
+                }
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", response.contentType());
+            if (response.body().length == 0) {
+                exchange.sendResponseHeaders(response.status(), -1);
+                return;
+            }
+            exchange.sendResponseHeaders(response.status(), response.body().length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response.body());
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.close();
+    }
+}
@@ -0,0 +1,52 @@
+package com.sheryl.slackagent.load;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+// Imitates POST /2010-04-01/Accounts/{sid}/Messages.json and reports each delivered recipient
+class TwilioStub extends StubServer {
+
+    private final Consumer<String> onDelivered;
+
+    TwilioStub(Consumer<String> onDelivered) throws IOException {
+        super("twilio", 120);
+        this.onDelivered = onDelivered;
+    }
+
+    @Override
+    protected String errorBody() {
+        return "{\"code\":20503,\"message\":\"Injected failure\",\"status\":503}";
+    }
+
+    @Override
+    protected Response handle(String method, String path, String query, byte[] body) {
+        if (!method.equals("POST") || !path.endsWith("/Messages.json")) {
+            return Response.json(404, "{\"code\":20404,\"message\":\"Not stubbed\",\"status\":404}");
+        }
+
+        Map<String, String> form = form(new String(body, StandardCharsets.UTF_8));
+        String to = form.getOrDefault("To", "");
+        onDelivered.accept(to.startsWith("whatsapp:") ? to.substring("whatsapp:".length()) : to);
+
+        String sid = "SM" + UUID.randomUUID().toString().replace("-", "");
+        return Response.json(201, "{\"sid\":\"" + sid + "\",\"status\":\"queued\",\"to\":\"" + to + "\","
+                + "\"from\":\"" + form.getOrDefault("From", "") + "\",\"num_segments\":\"1\",\"direction\":\"outbound-api\"}");
+    }
+
+    private static Map<String, String> form(String body) {
+        Map<String, String> form = new HashMap<>();
+        for (String pair : body.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                form.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return form;
+    }
+}
@@ -1,9 +1,14 @@
 package com.sheryl.slackagent;
 
+import com.sheryl.slackagent.config.ClientRuntimeHints;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(ClientRuntimeHints.class)
 public class SlackAgentApplication {
 
     public static void main(String[] args) {
@@ -0,0 +1,60 @@
+package com.sheryl.slackagent.config;
+
+import com.google.api.client.auth.oauth2.StoredCredential;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+// Reflection, resource and serialization hints for the native image. The Google clients bind JSON to
+// @Key fields of their model classes and Twilio binds it through Jackson creators, so every class in
+// those model packages is registered; the packages are scanned at build time to keep up with upgrades.
+public class ClientRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final List<String> MODEL_PACKAGES = List.of(
+            "com/google/api/services/gmail/model",
+            "com/google/api/services/calendar/model",
+            "com/google/api/client/googleapis/json",
+            "com/google/api/client/googleapis/auth/oauth2",
+            "com/google/api/client/auth/oauth2",
+            "com/twilio/rest/api/v2010/account",
+            "com/twilio/exception"
+    );
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver(classLoader);
+        for (String modelPackage : MODEL_PACKAGES) {
+            try {
+                for (Resource resource : resolver.getResources("classpath*:" + modelPackage + "/*.class")) {
+                    String file = resource.getFilename();
+                    if (file == null || file.equals("package-info.class")) continue;
+                    hints.reflection().registerType(
+                            TypeReference.of(modelPackage.replace('/', '.') + "." + file.substring(0, file.length() - ".class".length())),
+                            MemberCategory.DECLARED_FIELDS,
+                            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS,
+                            MemberCategory.INVOKE_PUBLIC_METHODS);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        // Tokens are stored in Redis as serialized StoredCredentials
+        hints.serialization().registerType(StoredCredential.class);
+        hints.serialization().registerType(Long.class);
+        hints.serialization().registerType(Number.class);
+
+        hints.resources().registerPattern("credentials.json");
+        // Trust store and version metadata loaded by GoogleApacheHttpTransport and the API clients
+        hints.resources().registerPattern("com/google/api/client/googleapis/*");
+        hints.resources().registerPattern("com/google/api/client/http/*.properties");
+        hints.resources().registerPattern("com/google/api/services/*/*.properties");
+    }
+}
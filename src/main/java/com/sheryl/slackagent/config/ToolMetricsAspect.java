@@ -0,0 +1,36 @@
+package com.sheryl.slackagent.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.stereotype.Component;
+
+// Times every @Tool method, whether the model or the intent router called it
+@Aspect
+@Component
+public class ToolMetricsAspect {
+
+    private final MeterRegistry registry;
+
+    public ToolMetricsAspect(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Around("@annotation(tool)")
+    public Object time(ProceedingJoinPoint joinPoint, Tool tool) throws Throwable {
+        String name = tool.name().isEmpty() ? joinPoint.getSignature().getName() : tool.name();
+        Timer.Sample sample = Timer.start(registry);
+        String outcome = "success";
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            outcome = e.getClass().getSimpleName();
+            throw e;
+        } finally {
+            sample.stop(registry.timer("sheryl.tool.calls", "tool", name, "outcome", outcome));
+        }
+    }
+}
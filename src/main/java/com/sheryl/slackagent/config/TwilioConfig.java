@@ -1,10 +1,17 @@
 package com.sheryl.slackagent.config;
 
 import com.twilio.Twilio;
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.TwilioRestClient;
 import jakarta.annotation.PostConstruct;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.HttpClientBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
+import java.net.URI;
+
 @Configuration
 public class TwilioConfig {
 
@@ -14,9 +21,25 @@ public class TwilioConfig {
     @Value("${twilio.auth.token}")
     private String token;
 
+    // Sends every Twilio API call to another host (the load-test stub); empty means api.twilio.com
+    @Value("${twilio.api.base-url:}")
+    private String apiBaseUrl;
+
     @PostConstruct
     public void init() {
         Twilio.init(sid, token);
+
+        if (!apiBaseUrl.isBlank()) {
+            URI base = URI.create(apiBaseUrl);
+            HttpHost host = new HttpHost(base.getHost(), base.getPort(), base.getScheme());
+            HttpClientBuilder httpClient = HttpClientBuilder.create()
+                    .setRoutePlanner((target, request, context) -> new HttpRoute(host));
+            Twilio.setRestClient(new TwilioRestClient.Builder(sid, token)
+                    .httpClient(new NetworkHttpClient(httpClient))
+                    .build());
+            System.out.println("⚠️ Twilio API calls are routed to " + apiBaseUrl);
+        }
+
         System.out.println("✅ Twilio initialized successfully");
     }
 }
@@ -2,30 +2,129 @@ package com.sheryl.slackagent.controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sheryl.slackagent.services.AgentService;
+import com.sheryl.slackagent.services.ConversationExecutor;
+import com.sheryl.slackagent.services.InboundDeduplicator;
+import com.sheryl.slackagent.services.IntentRouter;
+import com.sheryl.slackagent.services.OverloadedException;
+import com.sheryl.slackagent.services.Senders;
+import com.sheryl.slackagent.services.WhatsAppDispatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/sheryl")
 public class AgentController {
 
+    private static final String BUSY_REPLY = "😅 I'm a bit swamped right now, please try again in a minute.";
+
     @Autowired
     private AgentService sheryl;
 
+    @Autowired
+    private ConversationExecutor conversationExecutor;
+
+    @Autowired
+    private WhatsAppDispatcher whatsAppDispatcher;
+
+    @Autowired
+    private IntentRouter intentRouter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private InboundDeduplicator inboundDeduplicator;
+
+    // "tool": the model replies through whatsapp-message-tool; "stream": its text reply is streamed to WhatsApp
+    @Value("${sheryl.whatsapp.delivery:tool}")
+    private String deliveryMode;
+
 
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @PostMapping("")
-    public String ask(@RequestBody String prompt){
-        return sheryl.ask(prompt);
+    public String ask(@RequestParam(value = "sender", defaultValue = "api") String sender,
+                      @RequestBody String prompt){
+        String conversationId = Senders.normalize(sender);
+        return intentRouter.route(conversationId, prompt)
+                .orElseGet(() -> sheryl.ask(conversationId, prompt));
+    }
+
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<String> stream(@RequestParam(value = "sender", defaultValue = "api") String sender,
+                               @RequestBody String prompt) {
+        return sheryl.stream(Senders.normalize(sender), prompt);
     }
 
     @PostMapping("/whatsapp-listen")
-    public void receiveMessage(@RequestParam("From") String from,
-                                                 @RequestParam("Body") String body) {
+    public ResponseEntity<Void> receiveMessage(@RequestParam("From") String from,
+                                                 @RequestParam("Body") String body,
+                                                 @RequestParam(value = "MessageSid", required = false) String messageSid) {
+        // A retry of a message we already have: acknowledge it so Twilio stops, but don't run the turn again
+        if (!inboundDeduplicator.claim(messageSid)) {
+            System.out.println("Duplicate message " + messageSid + " from " + from + " ignored");
+            return ResponseEntity.ok().build();
+        }
+
         System.out.println("Message from: " + from + " -> " + body);
-        sheryl.ask("Message from: " + from + " -> " + body);
+
+        // Acknowledge Twilio straight away; the turn runs in the sender's queue
+        String conversationId = Senders.normalize(from);
+        String prompt = "Message from: " + from + " -> " + body;
+        // Measured from webhook receipt to the end of the turn, so time spent queued behind the sender's earlier messages counts
+        Timer.Sample received = Timer.start(meterRegistry);
+        boolean accepted = conversationExecutor.submit(from, () -> {
+            String route = "fast";
+            try {
+                Optional<String> reply = intentRouter.route(conversationId, body);
+                if (reply.isPresent()) {
+                    whatsAppDispatcher.send(conversationId, reply.get());
+                } else if ("stream".equals(deliveryMode)) {
+                    route = "stream";
+                    sheryl.streamToWhatsApp(conversationId, prompt, conversationId);
+                } else {
+                    route = "agent";
+                    sheryl.ask(conversationId, prompt);
+                }
+            } catch (OverloadedException e) {
+                route = "shed";
+                System.err.println("⚠️ " + e.getMessage() + ", asking " + conversationId + " to retry");
+                whatsAppDispatcher.send(conversationId, BUSY_REPLY);
+            } finally {
+                // Done even if the turn failed part-way: its tools may already have sent mail or created events
+                inboundDeduplicator.complete(messageSid);
+                received.stop(meterRegistry.timer("sheryl.webhook.turns", "route", route));
+            }
+        });
+
+        if (!accepted) {
+            // Not queued, so Twilio's retry must be allowed through
+            inboundDeduplicator.release(messageSid);
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok().build();
+    }
+
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<String> overloaded(OverloadedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header("Retry-After", "30")
+                .body(BUSY_REPLY);
+    }
+
+    @PostMapping("/whatsapp-status")
+    public void receiveStatus(@RequestParam("MessageSid") String messageSid,
+                              @RequestParam("MessageStatus") String messageStatus) {
+        whatsAppDispatcher.updateStatus(messageSid, messageStatus);
     }
 
 }
@@ -1,6 +1,9 @@
 package com.sheryl.slackagent.controllers;
 
+import com.sheryl.slackagent.services.CalendarEventStore;
 import com.sheryl.slackagent.services.GmailAuthService;
+import com.sheryl.slackagent.services.InboxWatcher;
+import com.sheryl.slackagent.services.MailboxIndex;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -11,15 +14,32 @@ import org.springframework.web.bind.annotation.RestController;
 public class GmailController {
 
     private final GmailAuthService gmailAuthService;
+    private final MailboxIndex mailboxIndex;
+    private final CalendarEventStore calendarEventStore;
+    private final InboxWatcher inboxWatcher;
 
-    public GmailController(GmailAuthService gmailAuthService) {
+    public GmailController(GmailAuthService gmailAuthService, MailboxIndex mailboxIndex,
+                           CalendarEventStore calendarEventStore, InboxWatcher inboxWatcher) {
         this.gmailAuthService = gmailAuthService;
+        this.mailboxIndex = mailboxIndex;
+        this.calendarEventStore = calendarEventStore;
+        this.inboxWatcher = inboxWatcher;
     }
 
     @GetMapping("/callback")
-    public String gmailCallback(@RequestParam("code") String code) {
+    public String gmailCallback(@RequestParam("code") String code,
+                                @RequestParam(value = "state", required = false) String state) {
         try {
-            gmailAuthService.handleOAuthCallback(code);
+            String userId = gmailAuthService.consumeState(state);
+            if (userId == null) {
+                return "❌ Error authorizing Gmail: this authorization link has expired or was already used. Please ask Sheryl for a new one.";
+            }
+            gmailAuthService.handleOAuthCallback(code, userId);
+
+            // The account may have changed, drop anything indexed for the old one
+            mailboxIndex.forget(userId);
+            calendarEventStore.forget(userId);
+            inboxWatcher.watch(userId);
             return "✅ Gmail authorized successfully! You can now close this tab.";
         } catch (Exception e) {
             e.printStackTrace();
@@ -0,0 +1,50 @@
+package com.sheryl.slackagent.controllers;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sheryl.slackagent.services.InboxWatcher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+@RestController
+@RequestMapping("/api/inbox")
+public class InboxController {
+
+    private final InboxWatcher inboxWatcher;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    // Shared secret in the Pub/Sub push endpoint URL (?token=...); empty accepts every push
+    @Value("${sheryl.inbox.push-token:}")
+    private String pushToken;
+
+    public InboxController(InboxWatcher inboxWatcher) {
+        this.inboxWatcher = inboxWatcher;
+    }
+
+    // Pub/Sub push for Gmail users.watch: {"message": {"data": base64({"emailAddress", "historyId"}), ...}, ...}.
+    // Anything but a 2xx makes Pub/Sub redeliver, so malformed pushes are acknowledged and dropped.
+    @PostMapping("/push")
+    public ResponseEntity<Void> push(@RequestParam(value = "token", required = false) String token,
+                                     @RequestBody String body) {
+        if (!pushToken.isBlank() && (token == null || !MessageDigest.isEqual(
+                pushToken.getBytes(StandardCharsets.UTF_8), token.getBytes(StandardCharsets.UTF_8)))) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        try {
+            String data = objectMapper.readTree(body).path("message").path("data").asText("");
+            JsonNode notification = objectMapper.readTree(Base64.getDecoder().decode(data));
+            inboxWatcher.pushed(notification.path("emailAddress").asText(null), notification.path("historyId").asText(null));
+        } catch (Exception e) {
+            System.err.println("⚠️ Ignoring malformed Gmail push: " + e.getMessage());
+        }
+        return ResponseEntity.noContent().build();
+    }
+}
@@ -0,0 +1,184 @@
+package com.sheryl.slackagent.services;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// AIMD concurrency limit for one downstream: the limit grows by 1/limit on each success while the limiter
+// is saturated and shrinks by a fixed ratio on each throttled or failed call. Callers over the limit wait in a
+// bounded queue that admits users round-robin, so one busy sender can't starve the others.
+final class AdaptiveLimiter {
+
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final int maxQueuePerUser;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // Users with waiting callers, in the order they will next be admitted
+    private final LinkedHashMap<String, ArrayDeque<Waiter>> waiting = new LinkedHashMap<>();
+
+    private double limit;
+    private int inFlight;
+    private int queued;
+
+    private static final class Waiter {
+
+        private final Condition ready;
+        private boolean admitted;
+
+        private Waiter(Condition ready) {
+            this.ready = ready;
+        }
+    }
+
+    final class Permit {
+
+        private boolean released;
+
+        private Permit() {
+        }
+
+        void success() {
+            release(false);
+        }
+
+        // The downstream throttled us or failed under load
+        void dropped() {
+            release(true);
+        }
+
+        private void release(boolean dropped) {
+            lock.lock();
+            try {
+                if (released) return;
+                released = true;
+                onRelease(dropped);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    AdaptiveLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                    int maxQueue, int maxQueuePerUser, long maxWaitMillis) {
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxQueuePerUser = maxQueuePerUser;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    Permit acquire(String user) {
+        lock.lock();
+        try {
+            if (queued == 0 && inFlight < (int) limit) {
+                inFlight++;
+                return new Permit();
+            }
+            if (queued >= maxQueue) throw new OverloadedException(name, "wait queue is full");
+
+            ArrayDeque<Waiter> mine = waiting.computeIfAbsent(user, key -> new ArrayDeque<>());
+            if (mine.size() >= maxQueuePerUser) throw new OverloadedException(name, "too many waiting calls for " + user);
+
+            Waiter waiter = new Waiter(lock.newCondition());
+            mine.addLast(waiter);
+            queued++;
+
+            long remaining = maxWaitNanos;
+            try {
+                while (!waiter.admitted) {
+                    if (remaining <= 0) {
+                        abandon(user, waiter);
+                        throw new OverloadedException(name, "no capacity within " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+                    }
+                    remaining = waiter.ready.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                if (waiter.admitted) {
+                    onRelease(false);
+                } else {
+                    abandon(user, waiter);
+                }
+                throw new OverloadedException(name, "interrupted while waiting");
+            }
+            return new Permit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int limit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int inFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int queued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Lock held
+    private void onRelease(boolean dropped) {
+        boolean saturated = queued > 0 || inFlight >= (int) limit;
+        inFlight--;
+        if (dropped) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+        admitWaiting();
+    }
+
+    // Lock held. Takes one waiter from the user at the head, then moves that user to the back.
+    private void admitWaiting() {
+        while (queued > 0 && inFlight < (int) limit) {
+            Iterator<Map.Entry<String, ArrayDeque<Waiter>>> users = waiting.entrySet().iterator();
+            Map.Entry<String, ArrayDeque<Waiter>> next = users.next();
+            users.remove();
+
+            Waiter waiter = next.getValue().pollFirst();
+            if (!next.getValue().isEmpty()) waiting.put(next.getKey(), next.getValue());
+
+            queued--;
+            inFlight++;
+            waiter.admitted = true;
+            waiter.ready.signal();
+        }
+    }
+
+    // Lock held
+    private void abandon(String user, Waiter waiter) {
+        ArrayDeque<Waiter> mine = waiting.get(user);
+        if (mine != null && mine.remove(waiter)) {
+            queued--;
+            if (mine.isEmpty()) waiting.remove(user);
+        }
+    }
+}
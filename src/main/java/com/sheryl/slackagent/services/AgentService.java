@@ -2,81 +2,246 @@ package com.sheryl.slackagent.services;
 
 import com.sheryl.slackagent.tools.CalendarTools;
 import com.sheryl.slackagent.tools.GmailTools;
+import com.sheryl.slackagent.tools.ReminderTools;
 import com.sheryl.slackagent.tools.WhatsAppTools;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.bedrock.converse.api.BedrockCacheOptions;
+import org.springframework.ai.bedrock.converse.api.BedrockCacheStrategy;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.client.advisor.MessageChatMemoryAdvisor;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class AgentService {
 
-    private final ChatClient chatClient;
-    private final WhatsAppTools whatsAppTools;
-    private final GmailTools gmailTools;
-    private final CalendarTools calendarTools;
+    private static final String SYSTEM_PROMPT = """
+            You are *Sheryl*, an intelligent AI Virtual Assistant that communicates with users primarily through WhatsApp
+            using the "whatsapp-message-tool". Your role is to assist users with:
+            - Managing emails (via Gmail)
+            - Scheduling, listing, or canceling calendar events (via Google Calendar)
+            - Sending or replying to WhatsApp messages
+            - Performing reminders and other assistant-like actions
+
+            # Behavior
+            - Respond naturally, like a friendly and capable WhatsApp assistant.
+            - Always prefer calling the appropriate tool instead of just replying.
+            - If an action cannot be performed (e.g., Gmail not authorized), clearly inform the user and guide them through authorization.
+            - Keep responses short, casual, and human-sounding, unless summarizing tool results.
+
+            # Tool Usage
+            - Use `whatsapp-message-tool` for communication.
+            - Use `gmail-tools` for anything related to email reading, sending, or organizing.
+            - When the same change applies to more than one email, make one call to a bulk Gmail tool (`mark_gmail_messages_as_read`, `flag_gmail_messages`, `delete_gmail_messages`, or `modify_gmail_messages_matching` for everything matching a search) instead of one call per message.
+            - Use `calendar-tools` for anything related to scheduling or events.
+            - Use `set_reminder`, `list_reminders` and `cancel_reminder` when the user asks to be reminded of something; the reminder arrives on WhatsApp at the requested time.
+            - You may chain tools (e.g., confirm a meeting over WhatsApp after creating an event in Calendar).
+
+            # Output Rules
+            - Always return JSON-safe text:
+              - Escape newlines (\\n), carriage returns (\\r), and quotes (\\").
+              - Avoid unescaped special characters.
+            - Summarize large outputs clearly but concisely.
+            - Never output raw JSON unless necessary for tool responses.
+
+            # Personality
+            - Friendly 😄
+            - Helpful and proactive
+            - Keeps context between user requests
+            - Uses emojis naturally but not excessively
+            - Talks like a real assistant, not a chatbot
+
+            # Error Handling
+            - If a tool fails (e.g., missing permission), say:
+              "⚠️ Please authorize access to [tool/service] here: [link]"
+            - Always make failures sound like simple next steps, not system errors.
+
+            # Example Behaviors
+            - If user says "Schedule a meeting with John tomorrow at 3pm", use `calendar-tools` to create it.
+            - If user says "Check if I have any birthdays next week", use `calendar-tools` to search.
+            - If user says "Send the report to my manager", use `gmail-tools` to find and send the email.
+            - Always confirm back via WhatsApp after completing a task.
+            
+            Warning make everything json compatible okay use escape character to prevent any json erros 
+            """;
+
+    // Appended to WhatsApp prompts when the reply itself is streamed to the user
+    private static final String STREAMED_REPLY_HINT = """
+
+            (Your text reply is delivered to this user on WhatsApp as you write it, \
+            so answer directly instead of calling `whatsapp-message-tool`.)""";
+
+    // Same prompt, tools and memory on both tiers; simple turns start on the fast one
+    private final Map<ModelTiers.Tier, ChatClient> chatClients = new EnumMap<>(ModelTiers.Tier.class);
+    private final NotificationService notifications;
+    private final ConversationMemory memory;
+    private final ModelMetrics modelMetrics;
+    private final WhatsAppDispatcher whatsAppDispatcher;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final ModelTiers modelTiers;
 
     public AgentService(ChatClient.Builder builder, WhatsAppTools whatsAppTools,
-                        GmailTools gmailTools, CalendarTools calendarTools) {
-        this.chatClient = builder.build();
-        this.whatsAppTools = whatsAppTools;
-        this.gmailTools = gmailTools;
-        this.calendarTools = calendarTools;
+                        GmailTools gmailTools, CalendarTools calendarTools, ReminderTools reminderTools,
+                        NotificationService notifications, ConversationMemory memory,
+                        ModelMetrics modelMetrics, WhatsAppDispatcher whatsAppDispatcher,
+                        ConcurrencyLimits concurrencyLimits, ModelTiers modelTiers) {
+        // The system prompt and tool schemas never change, so they are set once and cached by Bedrock
+        builder.defaultSystem(SYSTEM_PROMPT)
+                .defaultTools(whatsAppTools, gmailTools, calendarTools, reminderTools)
+                .defaultAdvisors(MessageChatMemoryAdvisor.builder(memory).build());
+        for (ModelTiers.Tier tier : ModelTiers.Tier.values()) {
+            chatClients.put(tier, builder.clone()
+                    .defaultOptions(modelTiers.options(tier)
+                            .cacheOptions(BedrockCacheOptions.builder()
+                                    .strategy(BedrockCacheStrategy.SYSTEM_AND_TOOLS)
+                                    .build())
+                            .build())
+                    .build());
+        }
+        this.notifications = notifications;
+        this.memory = memory;
+        this.modelMetrics = modelMetrics;
+        this.whatsAppDispatcher = whatsAppDispatcher;
+        this.concurrencyLimits = concurrencyLimits;
+        this.modelTiers = modelTiers;
+    }
+
+    // Throws OverloadedException when the model is saturated and the turn couldn't get a slot in time.
+    // The slot is held for the whole turn, tool calls included.
+    public String ask(String conversationId, String prompt) {
+        AdaptiveLimiter.Permit permit = concurrencyLimits.acquire(ConcurrencyLimits.BEDROCK, conversationId);
+        Throwable failure = null;
+
+        // Tool results are collected for the whole turn and formatted once it completes
+        NotificationService.Turn turn = notifications.openTurn();
+        try {
+            return chat(conversationId, prompt, turn);
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            concurrencyLimits.release(permit, failure);
+            notifications.flush(turn);
+        }
+    }
+
+    // A fast-tier turn that fails before any tool ran is retried on the large tier
+    private String chat(String conversationId, String prompt, NotificationService.Turn turn) {
+        Map<String, Object> toolContext = toolContext(conversationId, turn);
+        ModelTiers.Tier tier = modelTiers.classify("agent", prompt);
+        return modelTiers.call("agent", tier, attempt -> {
+            // The memory advisor stored the user message for the failed attempt already
+            if (attempt != tier) memory.forgetRetriedMessage(conversationId, prompt);
+            return chat(attempt, conversationId, prompt, toolContext);
+        }, () -> !toolsStarted(toolContext));
+    }
+
+    private String chat(ModelTiers.Tier tier, String conversationId, String prompt, Map<String, Object> toolContext) {
+        Timer.Sample sample = modelMetrics.start();
+        ChatResponse response;
+        try {
+            response = chatClients.get(tier)
+                    .prompt()
+                    .user(prompt)
+                    .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, conversationId))
+                    .toolContext(toolContext)
+                    .call()
+                    .chatResponse();
+        } catch (RuntimeException e) {
+            modelMetrics.failed("agent", tier, sample, e);
+            throw e;
+        }
+
+        modelMetrics.record("agent", tier, sample, response);
+        return response != null && response.getResult() != null ? response.getResult().getOutput().getText() : null;
+    }
+
+    // Tools see the turn (for notifications) and the sender; the count of started tool calls decides fallbacks
+    private Map<String, Object> toolContext(String conversationId, NotificationService.Turn turn) {
+        return Map.of(
+                NotificationService.TURN_KEY, turn,
+                Senders.TOOL_CONTEXT_KEY, conversationId,
+                ParallelToolCallingManager.TOOL_CALLS_KEY, new AtomicInteger());
+    }
+
+    private static boolean toolsStarted(Map<String, Object> toolContext) {
+        return ((AtomicInteger) toolContext.get(ParallelToolCallingManager.TOOL_CALLS_KEY)).get() > 0;
     }
 
-    public String ask(String prompt) {
-        return chatClient
-                .prompt()
-                .user(prompt)
-                .system("""
-                        You are *Sheryl*, an intelligent AI Virtual Assistant that communicates with users primarily through WhatsApp
-                        using the "whatsapp-message-tool". Your role is to assist users with:
-                        - Managing emails (via Gmail)
-                        - Scheduling, listing, or canceling calendar events (via Google Calendar)
-                        - Sending or replying to WhatsApp messages
-                        - Performing reminders and other assistant-like actions
-
-                        # Behavior
-                        - Respond naturally, like a friendly and capable WhatsApp assistant.
-                        - Always prefer calling the appropriate tool instead of just replying.
-                        - If an action cannot be performed (e.g., Gmail not authorized), clearly inform the user and guide them through authorization.
-                        - Keep responses short, casual, and human-sounding, unless summarizing tool results.
-
-                        # Tool Usage
-                        - Use `whatsapp-message-tool` for communication.
-                        - Use `gmail-tools` for anything related to email reading, sending, or organizing.
-                        - Use `calendar-tools` for anything related to scheduling, reminders, or events.
-                        - You may chain tools (e.g., confirm a meeting over WhatsApp after creating an event in Calendar).
-
-                        # Output Rules
-                        - Always return JSON-safe text:
-                          - Escape newlines (\\n), carriage returns (\\r), and quotes (\\").
-                          - Avoid unescaped special characters.
-                        - Summarize large outputs clearly but concisely.
-                        - Never output raw JSON unless necessary for tool responses.
-
-                        # Personality
-                        - Friendly 😄
-                        - Helpful and proactive
-                        - Keeps context between user requests
-                        - Uses emojis naturally but not excessively
-                        - Talks like a real assistant, not a chatbot
-
-                        # Error Handling
-                        - If a tool fails (e.g., missing permission), say:
-                          "⚠️ Please authorize access to [tool/service] here: [link]"
-                        - Always make failures sound like simple next steps, not system errors.
-
-                        # Example Behaviors
-                        - If user says "Schedule a meeting with John tomorrow at 3pm", use `calendar-tools` to create it.
-                        - If user says "Check if I have any birthdays next week", use `calendar-tools` to search.
-                        - If user says "Send the report to my manager", use `gmail-tools` to find and send the email.
-                        - Always confirm back via WhatsApp after completing a task.
-                        
-                        Warning make everything json compatible okay use escape character to prevent any json erros 
-                        """)
-                .tools(whatsAppTools, gmailTools, calendarTools)
-                .call()
-                .content();
+    // Streams the reply as it is generated; the turn's tool notifications go out when the stream ends
+    public Flux<String> stream(String conversationId, String prompt) {
+        return stream(conversationId, prompt, "");
     }
 
+    // The hint is appended after the turn is classified so it doesn't count towards its length.
+    // A fast-tier stream that fails before it produced anything or ran a tool is restarted on the large tier.
+    private Flux<String> stream(String conversationId, String prompt, String hint) {
+        return Flux.defer(() -> {
+            AdaptiveLimiter.Permit permit = concurrencyLimits.acquire(ConcurrencyLimits.BEDROCK, conversationId);
+            NotificationService.Turn turn = notifications.openTurn();
+            Map<String, Object> toolContext = toolContext(conversationId, turn);
+            ModelTiers.Tier tier = modelTiers.classify("agent-stream", prompt);
+            AtomicBoolean emitted = new AtomicBoolean();
+
+            Flux<ChatResponse> responses = stream(tier, conversationId, prompt + hint, toolContext, emitted);
+            if (tier == ModelTiers.Tier.FAST) {
+                responses = responses.onErrorResume(
+                        e -> !(e instanceof OverloadedException) && !emitted.get() && !toolsStarted(toolContext),
+                        e -> {
+                            modelTiers.fellBack("agent-stream", e);
+                            memory.forgetRetriedMessage(conversationId, prompt + hint);
+                            return stream(ModelTiers.Tier.LARGE, conversationId, prompt + hint, toolContext, emitted);
+                        });
+            }
+            return responses
+                    .doOnError(e -> concurrencyLimits.release(permit, e))
+                    .doFinally(signal -> {
+                        concurrencyLimits.release(permit, null);
+                        notifications.flush(turn);
+                    })
+                    .mapNotNull(response -> response.getResult() != null ? response.getResult().getOutput().getText() : null);
+        });
+    }
 
+    private Flux<ChatResponse> stream(ModelTiers.Tier tier, String conversationId, String prompt,
+                                      Map<String, Object> toolContext, AtomicBoolean emitted) {
+        return Flux.defer(() -> {
+            Timer.Sample sample = modelMetrics.start();
+            // Bedrock reports usage on the final chunk
+            AtomicReference<ChatResponse> last = new AtomicReference<>();
+            return chatClients.get(tier)
+                    .prompt()
+                    .user(prompt)
+                    .advisors(a -> a.param(ChatMemory.CONVERSATION_ID, conversationId))
+                    .toolContext(toolContext)
+                    .stream()
+                    .chatResponse()
+                    .doOnNext(response -> {
+                        last.set(response);
+                        emitted.set(true);
+                    })
+                    .doOnComplete(() -> modelMetrics.record("agent-stream", tier, sample, last.get()))
+                    .doOnError(e -> modelMetrics.failed("agent-stream", tier, sample, e));
+        });
+    }
+
+    // Sends the reply to WhatsApp piece by piece: the first sentence as soon as it is complete, then paragraphs.
+    // Blocks until the reply is finished so the sender's queue stays in order.
+    public void streamToWhatsApp(String conversationId, String prompt, String to) {
+        StreamChunker chunker = new StreamChunker();
+        stream(conversationId, prompt, STREAMED_REPLY_HINT)
+                .doOnNext(token -> chunker.accept(token).forEach(part -> whatsAppDispatcher.send(to, part)))
+                .blockLast();
+
+        String rest = chunker.finish();
+        if (!rest.isEmpty()) whatsAppDispatcher.send(to, rest);
+    }
 }
@@ -0,0 +1,285 @@
+package com.sheryl.slackagent.services;
+
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.Calendar;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventAttendee;
+import com.google.api.services.calendar.model.EventDateTime;
+import com.google.api.services.calendar.model.Events;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.DateTimeException;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+@Service
+public class CalendarEventStore {
+
+    private static final String CALENDAR_ID = "primary";
+
+    private final GmailAuthService gmailAuthService;
+
+    @Value("${sheryl.calendar.sync-interval-seconds:30}")
+    private long syncIntervalSeconds;
+
+    @Value("${sheryl.calendar.full-sync-days-back:30}")
+    private long fullSyncDaysBack;
+
+    // singleEvents expands recurring events into instances, so open-ended series need a horizon
+    @Value("${sheryl.calendar.full-sync-days-ahead:365}")
+    private long fullSyncDaysAhead;
+
+    private final Map<String, UserCalendar> calendars = new ConcurrentHashMap<>();
+
+    public CalendarEventStore(GmailAuthService gmailAuthService) {
+        this.gmailAuthService = gmailAuthService;
+    }
+
+    // Pulls changes since the last sync token; a no-op while the store is fresh
+    public void sync(String userId) throws Exception {
+        UserCalendar calendar = calendar(userId);
+        if (System.currentTimeMillis() - calendar.lastSyncMillis < TimeUnit.SECONDS.toMillis(syncIntervalSeconds)) return;
+
+        synchronized (calendar.syncLock) {
+            if (System.currentTimeMillis() - calendar.lastSyncMillis < TimeUnit.SECONDS.toMillis(syncIntervalSeconds)) return;
+
+            Calendar service = gmailAuthService.getCalendarService(userId);
+            try {
+                pull(calendar, service, calendar.syncToken);
+            } catch (GoogleJsonResponseException e) {
+                if (e.getStatusCode() != 410) throw e;
+                // Sync token expired, start over with a full sync
+                pull(calendar, service, null);
+            }
+            calendar.lastSyncMillis = System.currentTimeMillis();
+        }
+    }
+
+    private void pull(UserCalendar calendar, Calendar service, String token) throws Exception {
+        boolean fullSync = token == null;
+        List<Event> changes = new ArrayList<>();
+        String pageToken = null;
+        Events page;
+
+        do {
+            Calendar.Events.List request = service.events().list(CALENDAR_ID)
+                    .setSingleEvents(true)
+                    .setMaxResults(250)
+                    .setPageToken(pageToken);
+            if (fullSync) {
+                request.setTimeMin(new DateTime(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(fullSyncDaysBack)));
+                request.setTimeMax(new DateTime(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(fullSyncDaysAhead)));
+            } else {
+                request.setSyncToken(token);
+            }
+
+            page = request.execute();
+            if (page.getItems() != null) changes.addAll(page.getItems());
+            pageToken = page.getNextPageToken();
+        } while (pageToken != null);
+
+        if (page.getTimeZone() != null) {
+            try {
+                calendar.zone = ZoneId.of(page.getTimeZone());
+            } catch (DateTimeException e) {
+                System.err.println("⚠️ Unknown calendar time zone " + page.getTimeZone() + ": " + e.getMessage());
+            }
+        }
+
+        calendar.lock.writeLock().lock();
+        try {
+            if (fullSync) calendar.clear();
+            for (Event event : changes) {
+                calendar.unindex(event.getId());
+                if (!"cancelled".equals(event.getStatus())) calendar.index(event);
+            }
+            calendar.syncToken = page.getNextSyncToken();
+        } finally {
+            calendar.lock.writeLock().unlock();
+        }
+    }
+
+    // Write-through for events created or updated by the tools
+    public void put(String userId, Event event) {
+        UserCalendar calendar = calendar(userId);
+        calendar.lock.writeLock().lock();
+        try {
+            calendar.unindex(event.getId());
+            calendar.index(event);
+        } finally {
+            calendar.lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String userId, String eventId) {
+        UserCalendar calendar = calendar(userId);
+        calendar.lock.writeLock().lock();
+        try {
+            calendar.unindex(eventId);
+        } finally {
+            calendar.lock.writeLock().unlock();
+        }
+    }
+
+    public void forget(String userId) {
+        calendars.remove(userId);
+    }
+
+    // The time zone of the user's primary calendar, which "today" and printed times are in.
+    // Falls back to the server's zone until the calendar could be synced.
+    public ZoneId zone(String userId) {
+        try {
+            sync(userId);
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not sync the calendar of " + userId + " for its time zone: " + e.getMessage());
+        }
+        ZoneId zone = calendar(userId).zone;
+        return zone != null ? zone : ZoneId.systemDefault();
+    }
+
+    // Events that haven't ended by fromMillis, in start order; ongoing ones count however long ago they started
+    public List<Event> upcoming(String userId, long fromMillis, int limit) {
+        UserCalendar calendar = calendar(userId);
+        calendar.lock.readLock().lock();
+        try {
+            List<Event> result = new ArrayList<>();
+            for (Set<String> ids : calendar.byStart.values()) {
+                for (String id : ids) {
+                    Event event = calendar.events.get(id);
+                    if (millis(event.getEnd()) > fromMillis) result.add(event);
+                    if (result.size() >= limit) return result;
+                }
+            }
+            return result;
+        } finally {
+            calendar.lock.readLock().unlock();
+        }
+    }
+
+    public List<Event> search(String userId, String keyword, String attendeeEmail, int limit) {
+        UserCalendar calendar = calendar(userId);
+        calendar.lock.readLock().lock();
+        try {
+            Set<String> candidates = null;
+
+            if (attendeeEmail != null && !attendeeEmail.isBlank()) {
+                candidates = new HashSet<>(calendar.byAttendee.getOrDefault(attendeeEmail.toLowerCase(), Set.of()));
+            }
+
+            String needle = keyword != null && !keyword.isBlank() ? keyword.toLowerCase() : null;
+            if (needle != null) {
+                // The keyword matches as a substring, so its first word may start mid-word ("day" in "Birthday")
+                // and only the words after it can narrow the candidates, by prefix. A one-word keyword scans
+                // the user's events; the filter below has the final say either way.
+                List<String> words = tokenize(needle);
+                for (String token : words.subList(Math.min(1, words.size()), words.size())) {
+                    Set<String> matches = new HashSet<>();
+                    calendar.byToken.subMap(token, true, token + Character.MAX_VALUE, true).values().forEach(matches::addAll);
+                    if (candidates == null) candidates = matches;
+                    else candidates.retainAll(matches);
+                }
+            }
+
+            Collection<String> ids = candidates != null ? candidates : calendar.events.keySet();
+            return ids.stream()
+                    .map(calendar.events::get)
+                    .filter(event -> needle == null || contains(event.getSummary(), needle) || contains(event.getDescription(), needle))
+                    .sorted(Comparator.comparingLong(event -> millis(event.getStart())))
+                    .limit(limit)
+                    .toList();
+        } finally {
+            calendar.lock.readLock().unlock();
+        }
+    }
+
+    private UserCalendar calendar(String userId) {
+        return calendars.computeIfAbsent(userId, key -> new UserCalendar());
+    }
+
+    private static final class UserCalendar {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Object syncLock = new Object();
+
+        private final Map<String, Event> events = new HashMap<>();
+        private final TreeMap<Long, Set<String>> byStart = new TreeMap<>();
+        private final Map<String, Set<String>> byAttendee = new HashMap<>();
+        private final TreeMap<String, Set<String>> byToken = new TreeMap<>();
+
+        private String syncToken;
+        private volatile long lastSyncMillis;
+        private volatile ZoneId zone;
+
+        private void index(Event event) {
+            String id = event.getId();
+            events.put(id, event);
+            byStart.computeIfAbsent(millis(event.getStart()), key -> new LinkedHashSet<>()).add(id);
+            for (String email : attendees(event)) {
+                byAttendee.computeIfAbsent(email, key -> new HashSet<>()).add(id);
+            }
+            for (String token : tokens(event)) {
+                byToken.computeIfAbsent(token, key -> new HashSet<>()).add(id);
+            }
+        }
+
+        private void unindex(String id) {
+            Event event = events.remove(id);
+            if (event == null) return;
+
+            removeFrom(byStart, millis(event.getStart()), id);
+            for (String email : attendees(event)) removeFrom(byAttendee, email, id);
+            for (String token : tokens(event)) removeFrom(byToken, token, id);
+        }
+
+        private void clear() {
+            events.clear();
+            byStart.clear();
+            byAttendee.clear();
+            byToken.clear();
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, Set<String>> index, K key, String id) {
+        Set<String> ids = index.get(key);
+        if (ids == null) return;
+        ids.remove(id);
+        if (ids.isEmpty()) index.remove(key);
+    }
+
+    private static Set<String> attendees(Event event) {
+        if (event.getAttendees() == null) return Set.of();
+        Set<String> emails = new HashSet<>();
+        for (EventAttendee attendee : event.getAttendees()) {
+            if (attendee.getEmail() != null) emails.add(attendee.getEmail().toLowerCase());
+        }
+        return emails;
+    }
+
+    private static Set<String> tokens(Event event) {
+        Set<String> tokens = new HashSet<>();
+        if (event.getSummary() != null) tokens.addAll(tokenize(event.getSummary().toLowerCase()));
+        if (event.getDescription() != null) tokens.addAll(tokenize(event.getDescription().toLowerCase()));
+        return tokens;
+    }
+
+    private static List<String> tokenize(String text) {
+        return Arrays.stream(text.split("[^\\p{L}\\p{N}]+"))
+                .filter(token -> !token.isEmpty())
+                .toList();
+    }
+
+    private static boolean contains(String text, String needle) {
+        return text != null && text.toLowerCase().contains(needle);
+    }
+
+    public static long millis(EventDateTime time) {
+        if (time == null) return 0L;
+        DateTime value = time.getDateTime() != null ? time.getDateTime() : time.getDate();
+        return value != null ? value.getValue() : 0L;
+    }
+}
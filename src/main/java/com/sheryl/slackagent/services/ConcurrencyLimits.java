@@ -0,0 +1,147 @@
+package com.sheryl.slackagent.services;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.http.*;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Admission control for the model and the Google APIs. Each downstream gets its own adaptive limit,
+// configured under sheryl.limits.<downstream>.*
+@Service
+public class ConcurrencyLimits {
+
+    public static final String BEDROCK = "bedrock";
+    public static final String GMAIL = "gmail";
+    public static final String CALENDAR = "calendar";
+
+    private static final String BATCH_INTERCEPTOR = BatchRequest.class.getName() + "$BatchInterceptor";
+
+    private final Environment environment;
+    private final MeterRegistry registry;
+
+    private final Map<String, AdaptiveLimiter> limiters = new ConcurrentHashMap<>();
+
+    public ConcurrencyLimits(Environment environment, MeterRegistry registry) {
+        this.environment = environment;
+        this.registry = registry;
+    }
+
+    // Blocks for a slot (bounded by the downstream's max wait) or throws OverloadedException
+    AdaptiveLimiter.Permit acquire(String downstream, String user) {
+        try {
+            return limiter(downstream).acquire(user);
+        } catch (OverloadedException e) {
+            registry.counter("sheryl.limits.rejected", "downstream", downstream).increment();
+            throw e;
+        }
+    }
+
+    // Holds one slot per attempt of a Google request; a retry takes a new one when it goes out.
+    // 429 and 5xx responses shrink the limit.
+    HttpRequestInitializer limited(String downstream, String user, HttpRequestInitializer delegate) {
+        return request -> {
+            delegate.initialize(request);
+
+            AtomicReference<AdaptiveLimiter.Permit> permit = new AtomicReference<>();
+            HttpExecuteInterceptor previous = request.getInterceptor();
+            HttpUnsuccessfulResponseHandler previousUnsuccessful = request.getUnsuccessfulResponseHandler();
+            HttpResponseInterceptor previousResponse = request.getResponseInterceptor();
+            HttpIOExceptionHandler previousIOException = request.getIOExceptionHandler();
+
+            request.setInterceptor(r -> {
+                if (permit.get() == null && !isBatchPart(r)) permit.set(acquire(downstream, user));
+                try {
+                    if (previous != null) previous.intercept(r);
+                } catch (Exception e) {
+                    // The request never went out (e.g. the token refresh failed)
+                    release(permit, false);
+                    throw e;
+                }
+            });
+            request.setUnsuccessfulResponseHandler((r, response, supportsRetry) -> {
+                // The attempt is over before any backoff sleep
+                release(permit, isThrottled(response.getStatusCode()));
+                return previousUnsuccessful != null && previousUnsuccessful.handleResponse(r, response, supportsRetry);
+            });
+            request.setResponseInterceptor(response -> {
+                try {
+                    if (previousResponse != null) previousResponse.interceptResponse(response);
+                } finally {
+                    release(permit, isThrottled(response.getStatusCode()));
+                }
+            });
+            request.setIOExceptionHandler((r, supportsRetry) -> {
+                release(permit, true);
+                return previousIOException != null && previousIOException.handleIOException(r, supportsRetry);
+            });
+        };
+    }
+
+    private static void release(AtomicReference<AdaptiveLimiter.Permit> permit, boolean dropped) {
+        AdaptiveLimiter.Permit current = permit.getAndSet(null);
+        if (current == null) return;
+        if (dropped) current.dropped();
+        else current.success();
+    }
+
+    private static boolean isThrottled(int status) {
+        return status == 429 || status >= 500;
+    }
+
+    // BatchRequest runs the interceptor of every queued part for its auth header, but none of their response
+    // handlers, so the parts share the slot of the batch call itself
+    private static boolean isBatchPart(HttpRequest request) {
+        if (request.getInterceptor() != null && BATCH_INTERCEPTOR.equals(request.getInterceptor().getClass().getName())) {
+            return false;
+        }
+        return StackWalker.getInstance().walk(frames -> frames.limit(16)
+                .anyMatch(frame -> BATCH_INTERCEPTOR.equals(frame.getClassName())));
+    }
+
+    // Releases a model permit; only throttling and server errors count against the limit
+    void release(AdaptiveLimiter.Permit permit, Throwable error) {
+        if (error != null && isThrottled(error)) permit.dropped();
+        else permit.success();
+    }
+
+    // Bedrock throttling surfaces as an AWS service exception somewhere in the cause chain
+    private static boolean isThrottled(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof AwsServiceException aws && (aws.isThrottlingException() || aws.statusCode() >= 500)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private AdaptiveLimiter limiter(String downstream) {
+        return limiters.computeIfAbsent(downstream, this::create);
+    }
+
+    private AdaptiveLimiter create(String downstream) {
+        boolean model = BEDROCK.equals(downstream);
+        AdaptiveLimiter limiter = new AdaptiveLimiter(downstream,
+                property(downstream, "initial-limit", model ? 8 : 16),
+                property(downstream, "min-limit", 1),
+                property(downstream, "max-limit", model ? 64 : 100),
+                property(downstream, "max-queue", model ? 100 : 200),
+                property(downstream, "max-queue-per-user", model ? 2 : 10),
+                property(downstream, "max-wait-ms", model ? 5000 : 2000));
+
+        Gauge.builder("sheryl.limits.limit", limiter, AdaptiveLimiter::limit).tag("downstream", downstream).register(registry);
+        Gauge.builder("sheryl.limits.in-flight", limiter, AdaptiveLimiter::inFlight).tag("downstream", downstream).register(registry);
+        Gauge.builder("sheryl.limits.queued", limiter, AdaptiveLimiter::queued).tag("downstream", downstream).register(registry);
+        return limiter;
+    }
+
+    private int property(String downstream, String name, int defaultValue) {
+        return environment.getProperty("sheryl.limits." + downstream + "." + name, Integer.class, defaultValue);
+    }
+}
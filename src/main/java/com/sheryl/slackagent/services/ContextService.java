@@ -2,43 +2,108 @@ package com.sheryl.slackagent.services;
 
 
 import com.sheryl.slackagent.tools.WhatsAppTools;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.bedrock.converse.api.BedrockCacheOptions;
+import org.springframework.ai.bedrock.converse.api.BedrockCacheStrategy;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.stereotype.Service;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 @Service
 public class ContextService {
 
-    private final ChatClient chatClient;
+    private static final String SYSTEM_PROMPT = """
+            You are *Sheryl*, the AI Virtual Assistant. The following actions were executed successfully,
+            and you now have their results. Use these results to continue the conversation naturally —
+            confirm completion, ask clarifying questions, or follow up with the next logical step.
+
+            Keep tone friendly and conversational (like WhatsApp).
+            Use the appropriate tools again if follow-up actions are needed.
+            
+            The prompt is coming from you so think of it more like your inner thought okay 
+            As it is the output of  an operation that a user wnated so do not be like thanks for doing this 
+            Just convery the output neatly and nicely basically format the output well for the user 
+             
+            """;
+
+    // Formatting runs on the fast tier; the large one is only the fallback
+    private final Map<ModelTiers.Tier, ChatClient> chatClients = new EnumMap<>(ModelTiers.Tier.class);
     private final WhatsAppTools whatsAppTools;
+    private final ConversationMemory memory;
+    private final ModelMetrics modelMetrics;
+    private final ConcurrencyLimits concurrencyLimits;
+    private final ModelTiers modelTiers;
 
 
-    public ContextService(ChatClient.Builder builder, WhatsAppTools whatsAppTools) {
-        this.chatClient = builder.build();
+    public ContextService(ChatClient.Builder builder, WhatsAppTools whatsAppTools, ConversationMemory memory,
+                          ModelMetrics modelMetrics, ConcurrencyLimits concurrencyLimits, ModelTiers modelTiers) {
+        builder.defaultSystem(SYSTEM_PROMPT);
+        for (ModelTiers.Tier tier : ModelTiers.Tier.values()) {
+            chatClients.put(tier, builder.clone()
+                    .defaultOptions(modelTiers.options(tier)
+                            .cacheOptions(BedrockCacheOptions.builder()
+                                    .strategy(BedrockCacheStrategy.SYSTEM_ONLY)
+                                    .build())
+                            .build())
+                    .build());
+        }
         this.whatsAppTools = whatsAppTools;
-
+        this.memory = memory;
+        this.modelMetrics = modelMetrics;
+        this.concurrencyLimits = concurrencyLimits;
+        this.modelTiers = modelTiers;
     }
 
     public void invoke(String notifyNumber, String results) {
-        String response = chatClient
-                .prompt()
-                .user(results)
-                .system("""
-                You are *Sheryl*, the AI Virtual Assistant. The following actions were executed successfully,
-                and you now have their results. Use these results to continue the conversation naturally —
-                confirm completion, ask clarifying questions, or follow up with the next logical step.
-
-                Keep tone friendly and conversational (like WhatsApp).
-                Use the appropriate tools again if follow-up actions are needed.
-                
-                The prompt is coming from you so think of it more like your inner thought okay 
-                As it is the output of  an operation that a user wnated so do not be like thanks for doing this 
-                Just convery the output neatly and nicely basically format the output well for the user 
-             
-                """)
-                .call()
-                .content();
+        String response;
+        try {
+            response = format(notifyNumber, results);
+        } catch (OverloadedException e) {
+            // The tool output is already readable; sending it unpolished beats making the user wait
+            System.err.println("⚠️ " + e.getMessage() + ", sending raw results to " + notifyNumber);
+            response = results;
+        }
 
         whatsAppTools.sendMessage(notifyNumber, response);
+
+        // Remember what the user was shown so follow-ups like "the second one" resolve on the next turn
+        memory.add(Senders.normalize(notifyNumber), new AssistantMessage(response));
+    }
+
+    // One permit covers the fast attempt and, if it fails, the large one
+    private String format(String notifyNumber, String results) {
+        AdaptiveLimiter.Permit permit = concurrencyLimits.acquire(ConcurrencyLimits.BEDROCK, Senders.normalize(notifyNumber));
+        ModelTiers.Tier tier = modelTiers.enabled() ? ModelTiers.Tier.FAST : ModelTiers.Tier.LARGE;
+        try {
+            String formatted = modelTiers.call("context", tier, attempt -> format(attempt, results), () -> true);
+            concurrencyLimits.release(permit, null);
+            return formatted;
+        } catch (RuntimeException e) {
+            concurrencyLimits.release(permit, e);
+            throw e;
+        }
+    }
+
+    private String format(ModelTiers.Tier tier, String results) {
+        Timer.Sample sample = modelMetrics.start();
+        ChatResponse chatResponse;
+        try {
+            chatResponse = chatClients.get(tier)
+                    .prompt()
+                    .user(results)
+                    .call()
+                    .chatResponse();
+        } catch (RuntimeException e) {
+            modelMetrics.failed("context", tier, sample, e);
+            throw e;
+        }
+
+        modelMetrics.record("context", tier, sample, chatResponse);
+        return chatResponse.getResult().getOutput().getText();
     }
 
 }
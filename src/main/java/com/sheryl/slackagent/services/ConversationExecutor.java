@@ -0,0 +1,95 @@
+package com.sheryl.slackagent.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Destroyed before the dispatcher, so replies from turns that are still draining go out
+@Service
+@DependsOn("whatsAppDispatcher")
+public class ConversationExecutor {
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Tail of each sender's queue; new work is chained after it so one sender is handled in order
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> tails = new ConcurrentHashMap<>();
+
+    // Tasks submitted but not yet finished, across all senders
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private volatile boolean accepting = true;
+
+    private final long shutdownTimeoutSeconds;
+
+    @Autowired
+    public ConversationExecutor(MeterRegistry registry,
+                                @Value("${sheryl.executor.shutdown-timeout-seconds:30}") long shutdownTimeoutSeconds) {
+        this("inbound", registry, shutdownTimeoutSeconds);
+    }
+
+    // The queue name tags the gauges, so other queues (outbound WhatsApp) don't count as inbound work
+    ConversationExecutor(String queue, MeterRegistry registry, long shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+        Gauge.builder("sheryl.executor.senders", tails, Map::size)
+                .description("Senders with work queued or running")
+                .tag("queue", queue)
+                .register(registry);
+        Gauge.builder("sheryl.executor.queued", queued, AtomicInteger::get)
+                .description("Tasks queued or running across all senders")
+                .tag("queue", queue)
+                .register(registry);
+    }
+
+    public boolean submit(String sender, Runnable task) {
+        if (!accepting) return false;
+        queued.incrementAndGet();
+
+        CompletableFuture<Void> next = tails.compute(sender, (key, tail) ->
+                (tail != null ? tail : CompletableFuture.<Void>completedFuture(null))
+                        .thenRunAsync(() -> run(sender, task), executor));
+
+        next.whenComplete((ignored, error) -> tails.remove(sender, next));
+        return true;
+    }
+
+    public int activeSenders() {
+        return tails.size();
+    }
+
+    private void run(String sender, Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable e) {
+            System.err.println("❌ Failed to process message from " + sender + ": " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        accepting = false;
+
+        // Queued messages are only handed to the executor once their predecessor finishes, so drain the chains first
+        CompletableFuture<?>[] inFlight = tails.values().toArray(CompletableFuture[]::new);
+        try {
+            CompletableFuture.allOf(inFlight).get(shutdownTimeoutSeconds, TimeUnit.SECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            System.err.println("⚠️ Shutting down with " + tails.size() + " conversations still in flight");
+        }
+
+        executor.shutdown();
+        if (!executor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+}
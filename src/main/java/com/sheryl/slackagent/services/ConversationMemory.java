@@ -0,0 +1,231 @@
+package com.sheryl.slackagent.services;
+
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.memory.ChatMemory;
+import org.springframework.ai.chat.messages.*;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+@Service
+public class ConversationMemory implements ChatMemory {
+
+    private static final String KEY_PREFIX = "sheryl:memory:";
+    private static final String SUMMARY_SUFFIX = ":summary";
+    // Count of entries ever trimmed off the head; a trim only applies to the list it was computed from
+    private static final String TRIMMED_SUFFIX = ":trimmed";
+
+    private static final int MAX_TRIM_ATTEMPTS = 3;
+
+    // Drops the evicted head unless another trim ran since the snapshot; appends in between are kept
+    private static final RedisScript<Long> TRIM = new DefaultRedisScript<>("""
+            if tonumber(redis.call('GET', KEYS[2]) or '0') ~= tonumber(ARGV[1]) then return 0 end
+            redis.call('LTRIM', KEYS[1], ARGV[2], -1)
+            redis.call('INCRBY', KEYS[2], ARGV[2])
+            redis.call('EXPIRE', KEYS[2], ARGV[3])
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate redis;
+    private final Map<ModelTiers.Tier, ChatClient> summarizers = new EnumMap<>(ModelTiers.Tier.class);
+    private final ConversationExecutor conversationExecutor;
+    private final ModelTiers modelTiers;
+    private final ModelMetrics modelMetrics;
+
+    @Value("${sheryl.memory.token-budget:3000}")
+    private int tokenBudget;
+
+    @Value("${sheryl.memory.ttl-hours:72}")
+    private long ttlHours;
+
+    public ConversationMemory(StringRedisTemplate redis, ChatClient.Builder builder,
+                              ConversationExecutor conversationExecutor, ModelTiers modelTiers, ModelMetrics modelMetrics) {
+        this.redis = redis;
+        for (ModelTiers.Tier tier : ModelTiers.Tier.values()) {
+            summarizers.put(tier, builder.clone().defaultOptions(modelTiers.options(tier).build()).build());
+        }
+        this.conversationExecutor = conversationExecutor;
+        this.modelTiers = modelTiers;
+        this.modelMetrics = modelMetrics;
+    }
+
+    record Entry(MessageType type, String text) {
+    }
+
+    @Override
+    public void add(String conversationId, List<Message> messages) {
+        List<String> encoded = messages.stream()
+                .filter(m -> m.getMessageType() == MessageType.USER || m.getMessageType() == MessageType.ASSISTANT)
+                .filter(m -> m.getText() != null && !m.getText().isBlank())
+                .map(m -> m.getMessageType().name() + "|" + m.getText())
+                .toList();
+        if (encoded.isEmpty()) return;
+
+        String key = KEY_PREFIX + conversationId;
+        redis.opsForList().rightPushAll(key, encoded);
+        redis.expire(key, Duration.ofHours(ttlHours));
+        trim(conversationId, key);
+    }
+
+    // A turn retried on the large model tier stores its user message again; drops the copy stored by the
+    // failed attempt, the newest one with that text
+    public void forgetRetriedMessage(String conversationId, String userText) {
+        if (userText == null || userText.isBlank()) return;
+        redis.opsForList().remove(KEY_PREFIX + conversationId, -1, MessageType.USER.name() + "|" + userText);
+    }
+
+    @Override
+    public List<Message> get(String conversationId) {
+        // Bedrock expects alternating roles, so back-to-back messages from the same side are merged
+        List<Entry> window = new ArrayList<>();
+        for (Entry entry : load(KEY_PREFIX + conversationId)) {
+            int last = window.size() - 1;
+            if (last >= 0 && window.get(last).type() == entry.type()) {
+                window.set(last, new Entry(entry.type(), window.get(last).text() + "\n\n" + entry.text()));
+            } else {
+                window.add(entry);
+            }
+        }
+
+        // The summary rides on the first user turn rather than a system message so the static
+        // system prompt stays a cacheable prefix. The window must also open on a user turn.
+        String summary = redis.opsForValue().get(KEY_PREFIX + conversationId + SUMMARY_SUFFIX);
+        String note = summary != null ? "(Summary of our earlier conversation: " + summary + ")" : null;
+
+        if (!window.isEmpty() && window.get(0).type() == MessageType.USER) {
+            if (note != null) window.set(0, new Entry(MessageType.USER, note + "\n\n" + window.get(0).text()));
+        } else if (!window.isEmpty()) {
+            window.add(0, new Entry(MessageType.USER, note != null ? note : "(Continuing our conversation)"));
+        } else if (note != null) {
+            window.add(new Entry(MessageType.USER, note));
+            window.add(new Entry(MessageType.ASSISTANT, "Got it."));
+        }
+
+        List<Message> messages = new ArrayList<>(window.size());
+        window.forEach(entry -> messages.add(toMessage(entry)));
+        return messages;
+    }
+
+    @Override
+    public void clear(String conversationId) {
+        redis.delete(List.of(KEY_PREFIX + conversationId, KEY_PREFIX + conversationId + SUMMARY_SUFFIX,
+                KEY_PREFIX + conversationId + TRIMMED_SUFFIX));
+    }
+
+    // Keeps the newest messages that fit the token budget and folds the rest into the summary in the background.
+    // Concurrent adds each trim; a trim that lost the race recomputes from the list as it is now.
+    private void trim(String conversationId, String key) {
+        String trimmedKey = key + TRIMMED_SUFFIX;
+        for (int attempt = 0; attempt < MAX_TRIM_ATTEMPTS; attempt++) {
+            // Read before the list, so a trim in between makes the script refuse this snapshot
+            String trimmed = redis.opsForValue().get(trimmedKey);
+            List<Entry> entries = load(key);
+            int keepFrom = keepFrom(entries, tokenBudget);
+            if (keepFrom == 0) return;
+
+            Long applied = redis.execute(TRIM, List.of(key, trimmedKey), trimmed != null ? trimmed : "0",
+                    Integer.toString(keepFrom), Long.toString(Duration.ofHours(ttlHours).toSeconds()));
+            if (applied != null && applied == 1) {
+                List<Entry> evicted = List.copyOf(entries.subList(0, keepFrom));
+                conversationExecutor.submit("memory:" + conversationId, () -> summarize(conversationId, evicted));
+                return;
+            }
+        }
+    }
+
+    // Index of the oldest entry to keep: the newest entries that fit the budget, opening on a user message.
+    // The newest user message is always kept, even when it alone is over the budget (a pasted email), or
+    // the turn it starts would open with no context at all.
+    static int keepFrom(List<Entry> entries, int tokenBudget) {
+        int tokens = 0;
+        int keepFrom = entries.size();
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            tokens += estimateTokens(entries.get(i).text());
+            if (tokens > tokenBudget) break;
+            keepFrom = i;
+        }
+        // The window has to open on a user message
+        while (keepFrom < entries.size() - 1 && entries.get(keepFrom).type() != MessageType.USER) keepFrom++;
+
+        // Without any user message (only digests) the newest entry stays
+        int newest = entries.size() - 1;
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            if (entries.get(i).type() == MessageType.USER) {
+                newest = i;
+                break;
+            }
+        }
+        return Math.max(0, Math.min(keepFrom, newest));
+    }
+
+    private void summarize(String conversationId, List<Entry> evicted) {
+        String summaryKey = KEY_PREFIX + conversationId + SUMMARY_SUFFIX;
+        String previous = redis.opsForValue().get(summaryKey);
+
+        String transcript = evicted.stream()
+                .map(e -> e.type().name().toLowerCase() + ": " + e.text())
+                .collect(Collectors.joining("\n"));
+
+        String request = (previous != null ? "Existing summary:\n" + previous + "\n\n" : "") + "New messages:\n" + transcript;
+        ModelTiers.Tier tier = modelTiers.enabled() ? ModelTiers.Tier.FAST : ModelTiers.Tier.LARGE;
+        String summary = modelTiers.call("summary", tier, attempt -> summarize(attempt, request), () -> true);
+
+        if (summary != null && !summary.isBlank()) {
+            redis.opsForValue().set(summaryKey, summary.trim(), Duration.ofHours(ttlHours));
+        }
+    }
+
+    private String summarize(ModelTiers.Tier tier, String request) {
+        Timer.Sample sample = modelMetrics.start();
+        ChatResponse response;
+        try {
+            response = summarizers.get(tier)
+                    .prompt()
+                    .system("""
+                            You maintain a running summary of a WhatsApp conversation between a user and Sheryl, their assistant.
+                            Merge the new messages into the existing summary. Keep names, dates, email subjects, event titles
+                            and any open requests or promises. Drop greetings and small talk. Answer with the summary only,
+                            in at most 150 words.
+                            """)
+                    .user(request)
+                    .call()
+                    .chatResponse();
+        } catch (RuntimeException e) {
+            modelMetrics.failed("summary", tier, sample, e);
+            throw e;
+        }
+
+        modelMetrics.record("summary", tier, sample, response);
+        return response != null && response.getResult() != null ? response.getResult().getOutput().getText() : null;
+    }
+
+    private List<Entry> load(String key) {
+        List<String> raw = redis.opsForList().range(key, 0, -1);
+        if (raw == null) return List.of();
+
+        List<Entry> entries = new ArrayList<>(raw.size());
+        for (String value : raw) {
+            int separator = value.indexOf('|');
+            if (separator < 0) continue;
+            entries.add(new Entry(MessageType.valueOf(value.substring(0, separator)), value.substring(separator + 1)));
+        }
+        return entries;
+    }
+
+    private Message toMessage(Entry entry) {
+        return entry.type() == MessageType.USER ? new UserMessage(entry.text()) : new AssistantMessage(entry.text());
+    }
+
+    // Rough estimate, ~4 characters per token for English text
+    static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + 3) / 4;
+    }
+}
@@ -1,25 +1,40 @@
 package com.sheryl.slackagent.services;
 
 import com.google.api.client.auth.oauth2.Credential;
+import com.google.api.client.auth.oauth2.StoredCredential;
+import com.google.api.client.googleapis.apache.v2.GoogleApacheHttpTransport;
 import com.google.api.client.googleapis.auth.oauth2.*;
-import com.google.api.client.googleapis.javanet.GoogleNetHttpTransport;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.api.client.http.HttpTransport;
+import com.google.api.client.json.JsonFactory;
 import com.google.api.client.json.gson.GsonFactory;
-import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.CalendarScopes;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.GmailScopes;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
 
 @Service
 public class GmailAuthService {
 
-    private static final String TOKENS_DIRECTORY_PATH = "tokens";
+    private static final String APPLICATION_NAME = "SlackAgent";
+
+    private static final JsonFactory JSON_FACTORY = GsonFactory.getDefaultInstance();
 
     private static final List<String> SCOPES = List.of(
             GmailScopes.GMAIL_SEND,
@@ -31,46 +46,232 @@ public class GmailAuthService {
 
     private static final String CREDENTIALS_FILE_PATH = "/credentials.json";
 
+    // OAuth state nonce -> user ID, single use
+    private static final String STATE_PREFIX = "sheryl:google:oauth-state:";
+
+    private static final String REFRESH_LOCK_PREFIX = "sheryl:google:refresh-lock:";
+
+    // Announces "<instance>:<user>" when a user's credential is replaced, so other instances drop their clients
+    private static final String CHANNEL = "sheryl:google:reauthorized";
+
+    private static final Duration REFRESH_LOCK_TTL = Duration.ofSeconds(30);
+
     @Value("${gmail.redirect.uri}")
     private String redirectUri;
 
+    @Value("${sheryl.google.client-cache-size:1000}")
+    private int clientCacheSize;
+
+    @Value("${sheryl.google.refresh-ahead-seconds:300}")
+    private long refreshAheadSeconds;
+
+    @Value("${sheryl.google.oauth-state-ttl-minutes:15}")
+    private long oauthStateTtlMinutes;
+
+    // Points the Gmail and Calendar clients at another host (the load-test stubs); empty means Google
+    @Value("${sheryl.google.root-url:}")
+    private String rootUrl;
+
+    // One pooled transport shared by the flow and every Google client
+    private final HttpTransport httpTransport;
+
+    // Tokens live in Redis keyed by the user's WhatsApp number
+    private final RedisDataStoreFactory dataStoreFactory;
+
+    private final GoogleApiMetrics googleApiMetrics;
+
+    private final ConcurrencyLimits concurrencyLimits;
+
+    private final StringRedisTemplate redis;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final String instanceId = UUID.randomUUID().toString();
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final ExecutorService refresher = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile GoogleAuthorizationCodeFlow flow;
+
+    // Hot per-user clients, least recently used evicted first
+    private final Map<String, Clients> clients = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Clients> eldest) {
+                    return size() > clientCacheSize;
+                }
+            });
+
+    // Concurrent first calls for the same user share one credential load
+    private final ConcurrentHashMap<String, CompletableFuture<Clients>> loading = new ConcurrentHashMap<>();
+
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    record Clients(Credential credential, Gmail gmail, Calendar calendar) {
+    }
+
+    public GmailAuthService(RedisDataStoreFactory dataStoreFactory, GoogleApiMetrics googleApiMetrics,
+                            ConcurrencyLimits concurrencyLimits, StringRedisTemplate redis,
+                            RedisMessageListenerContainer listenerContainer) throws GeneralSecurityException, IOException {
+        this.httpTransport = GoogleApacheHttpTransport.newTrustedTransport();
+        this.dataStoreFactory = dataStoreFactory;
+        this.googleApiMetrics = googleApiMetrics;
+        this.concurrencyLimits = concurrencyLimits;
+        this.redis = redis;
+        this.listenerContainer = listenerContainer;
+    }
+
+    // Subscribes once the application is up, like the reminder channel
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] announced = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 2);
+            if (announced.length == 2 && !instanceId.equals(announced[0])) clients.remove(announced[1]);
+        }, new ChannelTopic(CHANNEL));
+    }
+
     // Gmail service
-    public Gmail getGmailService() throws Exception {
-        final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        Credential credential = getCredentials(httpTransport);
-        return new Gmail.Builder(httpTransport, GsonFactory.getDefaultInstance(), credential)
-                .setApplicationName("SlackAgent")
-                .build();
+    public Gmail getGmailService(String userId) throws Exception {
+        return clients(userId).gmail();
     }
 
     // Calendar service
-    public Calendar getCalendarService() throws Exception {
-        final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        Credential credential = getCredentials(httpTransport);
+    public Calendar getCalendarService(String userId) throws Exception {
+        return clients(userId).calendar();
+    }
+
+    // Clients are rebuilt only when there is no usable credential (first use, revoked or failed refresh).
+    // Token refreshes happen inside the cached Credential and are persisted by the flow's data store.
+    private Clients clients(String userId) throws Exception {
+        Clients current = clients.get(userId);
+        if (current != null && current.credential().getAccessToken() != null) {
+            return current;
+        }
+
+        CompletableFuture<Clients> mine = new CompletableFuture<>();
+        CompletableFuture<Clients> inFlight = loading.putIfAbsent(userId, mine);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+        }
+
+        try {
+            Clients loaded = buildClients(userId, getCredentials(userId));
+            clients.put(userId, loaded);
+            mine.complete(loaded);
+            return loaded;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(userId, mine);
+        }
+    }
+
+    // Requests are admitted by the per-API concurrency limit first, then authorized and timed
+    Clients buildClients(String userId, Credential credential) {
+        Gmail.Builder gmail = new Gmail.Builder(httpTransport, JSON_FACTORY, concurrencyLimits.limited(
+                        ConcurrencyLimits.GMAIL, userId, googleApiMetrics.timed("gmail", credential)))
+                .setApplicationName(APPLICATION_NAME);
+        Calendar.Builder calendar = new Calendar.Builder(httpTransport, JSON_FACTORY, concurrencyLimits.limited(
+                        ConcurrencyLimits.CALENDAR, userId, googleApiMetrics.timed("calendar", credential)))
+                .setApplicationName(APPLICATION_NAME);
+        if (rootUrl != null && !rootUrl.isBlank()) {
+            gmail.setRootUrl(rootUrl);
+            calendar.setRootUrl(rootUrl);
+        }
+        return new Clients(credential, gmail.build(), calendar.build());
+    }
+
+    // Refreshes tokens that are about to expire so no request has to wait on an OAuth round trip.
+    // Credential.refreshToken() holds the credential's lock, so a request racing it waits for this refresh.
+    // Every instance caches the same users, so one refreshes under a Redis lock and the others pick up the
+    // stored token.
+    @Scheduled(fixedDelayString = "${sheryl.google.refresh-check-ms:60000}")
+    public void refreshExpiringTokens() {
+        List<Map.Entry<String, Clients>> snapshot;
+        synchronized (clients) {
+            snapshot = new ArrayList<>(clients.entrySet());
+        }
+
+        for (Map.Entry<String, Clients> entry : snapshot) {
+            Credential credential = entry.getValue().credential();
+            Long expiresIn = credential.getExpiresInSeconds();
+            if (expiresIn == null || expiresIn > refreshAheadSeconds || credential.getRefreshToken() == null) continue;
+            if (!refreshing.add(entry.getKey())) continue;
 
-        return new Calendar.Builder(httpTransport, GsonFactory.getDefaultInstance(), credential)
-                .setApplicationName("SlackAgent")
-                .build();
+            refresher.submit(() -> {
+                String lock = REFRESH_LOCK_PREFIX + entry.getKey();
+                try {
+                    if (adoptStored(entry.getKey(), credential)) return;
+                    if (!Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(lock, instanceId, REFRESH_LOCK_TTL))) return;
+                    try {
+                        // The lock may have been taken right after another instance finished its refresh
+                        if (!adoptStored(entry.getKey(), credential)) credential.refreshToken();
+                    } finally {
+                        redis.delete(lock);
+                    }
+                } catch (Exception e) {
+                    System.err.println("⚠️ Could not refresh Google token for " + entry.getKey() + ": " + e.getMessage());
+                } finally {
+                    refreshing.remove(entry.getKey());
+                }
+            });
+        }
     }
 
-    private Credential getCredentials(final NetHttpTransport HTTP_TRANSPORT) throws Exception {
-        InputStream in = GmailAuthService.class.getResourceAsStream(CREDENTIALS_FILE_PATH);
-        if (in == null) throw new FileNotFoundException("Resource not found: " + CREDENTIALS_FILE_PATH);
+    // Takes over the stored token when another instance refreshed it after this credential was loaded
+    private boolean adoptStored(String userId, Credential credential) throws IOException {
+        StoredCredential stored = flow().getCredentialDataStore().get(userId);
+        if (stored == null || stored.getAccessToken() == null || stored.getExpirationTimeMilliseconds() == null) return false;
+
+        Long current = credential.getExpirationTimeMilliseconds();
+        if (current != null && stored.getExpirationTimeMilliseconds() <= current) return false;
+        credential.setAccessToken(stored.getAccessToken())
+                .setExpirationTimeMilliseconds(stored.getExpirationTimeMilliseconds());
+        if (stored.getRefreshToken() != null) credential.setRefreshToken(stored.getRefreshToken());
+        return true;
+    }
 
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(
-                GsonFactory.getDefaultInstance(), new InputStreamReader(in));
+    private GoogleAuthorizationCodeFlow flow() throws IOException {
+        GoogleAuthorizationCodeFlow current = flow;
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            if (flow == null) {
+                InputStream in = GmailAuthService.class.getResourceAsStream(CREDENTIALS_FILE_PATH);
+                if (in == null) throw new FileNotFoundException("Resource not found: " + CREDENTIALS_FILE_PATH);
+
+                GoogleClientSecrets clientSecrets;
+                try (Reader reader = new InputStreamReader(in)) {
+                    clientSecrets = GoogleClientSecrets.load(JSON_FACTORY, reader);
+                }
+
+                flow = new GoogleAuthorizationCodeFlow.Builder(
+                        httpTransport, JSON_FACTORY,
+                        clientSecrets, new ArrayList<>(SCOPES))
+                        .setDataStoreFactory(dataStoreFactory)
+                        .setAccessType("offline")
+                        .build();
+            }
+            return flow;
+        }
+    }
 
-        GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
-                HTTP_TRANSPORT, GsonFactory.getDefaultInstance(),
-                clientSecrets, new ArrayList<>(SCOPES))
-                .setDataStoreFactory(new FileDataStoreFactory(new java.io.File(TOKENS_DIRECTORY_PATH)))
-                .setAccessType("offline")
-                .build();
+    private Credential getCredentials(String userId) throws Exception {
+        GoogleAuthorizationCodeFlow flow = flow();
 
-        Credential credential = flow.loadCredential("user");
+        Credential credential = flow.loadCredential(userId);
         if (credential == null || credential.getAccessToken() == null) {
+            // The state parameter is a single-use nonce that the callback resolves back to the user ID
             String authorizationUrl = flow.newAuthorizationUrl()
                     .setRedirectUri(redirectUri)
+                    .setState(newState(userId))
                     .build();
             throw new IllegalStateException(
                     "⚠️ No credentials found. Send user to authorize at: " + authorizationUrl
@@ -80,25 +281,37 @@ public class GmailAuthService {
         return credential;
     }
 
+    private String newState(String userId) {
+        byte[] nonce = new byte[24];
+        random.nextBytes(nonce);
+        String state = Base64.getUrlEncoder().withoutPadding().encodeToString(nonce);
+        redis.opsForValue().set(STATE_PREFIX + state, userId, Duration.ofMinutes(oauthStateTtlMinutes));
+        return state;
+    }
+
+    // The user the authorization link was issued to, or null when the state is unknown, expired or already used
+    public String consumeState(String state) {
+        if (state == null || state.isBlank()) return null;
+        return redis.opsForValue().getAndDelete(STATE_PREFIX + state);
+    }
+
     // Handle OAuth callback
-    public void handleOAuthCallback(String code) throws Exception {
-        final NetHttpTransport httpTransport = GoogleNetHttpTransport.newTrustedTransport();
-        InputStream in = GmailAuthService.class.getResourceAsStream(CREDENTIALS_FILE_PATH);
-        GoogleClientSecrets clientSecrets = GoogleClientSecrets.load(
-                GsonFactory.getDefaultInstance(), new InputStreamReader(in));
-
-        GoogleAuthorizationCodeFlow flow = new GoogleAuthorizationCodeFlow.Builder(
-                httpTransport, GsonFactory.getDefaultInstance(),
-                clientSecrets, new ArrayList<>(SCOPES))
-                .setDataStoreFactory(new FileDataStoreFactory(new java.io.File(TOKENS_DIRECTORY_PATH)))
-                .setAccessType("offline")
-                .build();
+    public void handleOAuthCallback(String code, String userId) throws Exception {
+        GoogleAuthorizationCodeFlow flow = flow();
 
         GoogleTokenResponse tokenResponse = flow.newTokenRequest(code)
                 .setRedirectUri(redirectUri)
                 .execute();
 
-        flow.createAndStoreCredential(tokenResponse, "user");
-        System.out.println("✅ Gmail account authorized successfully.");
+        Credential credential = flow.createAndStoreCredential(tokenResponse, userId);
+        clients.put(userId, buildClients(userId, credential));
+        redis.convertAndSend(CHANNEL, instanceId + ":" + userId);
+        System.out.println("✅ Gmail account authorized successfully for " + userId + ".");
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        refresher.close();
+        httpTransport.shutdown();
     }
 }
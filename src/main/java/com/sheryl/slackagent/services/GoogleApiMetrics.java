@@ -0,0 +1,49 @@
+package com.sheryl.slackagent.services;
+
+import com.google.api.client.http.HttpExecuteInterceptor;
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.HttpResponseInterceptor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+// Times each HTTP exchange a Google client makes, retries and batch calls included
+@Component
+public class GoogleApiMetrics {
+
+    private final MeterRegistry registry;
+
+    public GoogleApiMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    // Wraps the client's initializer (the OAuth credential) so the timer starts after the auth header is set
+    public HttpRequestInitializer timed(String api, HttpRequestInitializer delegate) {
+        return request -> {
+            delegate.initialize(request);
+
+            long[] started = new long[1];
+            HttpExecuteInterceptor auth = request.getInterceptor();
+            HttpResponseInterceptor previous = request.getResponseInterceptor();
+
+            request.setInterceptor(r -> {
+                if (auth != null) auth.intercept(r);
+                started[0] = System.nanoTime();
+            });
+            request.setResponseInterceptor(response -> {
+                if (previous != null) previous.interceptResponse(response);
+                record(api, request.getRequestMethod(), String.valueOf(response.getStatusCode()), started[0]);
+            });
+            request.setIOExceptionHandler((r, supportsRetry) -> {
+                record(api, r.getRequestMethod(), "IO_ERROR", started[0]);
+                return false;
+            });
+        };
+    }
+
+    private void record(String api, String method, String status, long started) {
+        registry.timer("sheryl.google.requests", "api", api, "method", method, "status", status)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,87 @@
+package com.sheryl.slackagent.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Twilio retries a webhook it thinks failed; each MessageSid is processed once across all instances.
+// A claim is held as "processing" under a short lease while the turn runs and becomes "done" for the full TTL.
+@Service
+public class InboundDeduplicator {
+
+    private static final String KEY_PREFIX = "sheryl:inbound:";
+
+    private final StringRedisTemplate redis;
+    private final MeterRegistry registry;
+
+    @Value("${sheryl.inbound.dedup-ttl-hours:24}")
+    private long ttlHours;
+
+    @Value("${sheryl.inbound.processing-lease-minutes:10}")
+    private long leaseMinutes;
+
+    @Value("${sheryl.inbound.local-size:10000}")
+    private int localSize;
+
+    // Recently claimed SIDs on this instance, so most retries never reach Redis
+    private final Map<String, Boolean> seen = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > localSize;
+                }
+            });
+
+    public InboundDeduplicator(StringRedisTemplate redis, MeterRegistry registry) {
+        this.redis = redis;
+        this.registry = registry;
+    }
+
+    // True when this caller should process the message; false for a duplicate or one already in progress
+    public boolean claim(String messageSid) {
+        if (messageSid == null || messageSid.isBlank()) return true;
+
+        if (seen.putIfAbsent(messageSid, Boolean.TRUE) != null) {
+            registry.counter("sheryl.webhook.duplicates", "source", "local").increment();
+            return false;
+        }
+
+        try {
+            Boolean claimed = redis.opsForValue().setIfAbsent(KEY_PREFIX + messageSid, "processing", Duration.ofMinutes(leaseMinutes));
+            if (Boolean.FALSE.equals(claimed)) {
+                registry.counter("sheryl.webhook.duplicates", "source", "redis").increment();
+                return false;
+            }
+        } catch (RuntimeException e) {
+            // Without Redis only this instance's memory protects against retries; process rather than drop the message
+            System.err.println("⚠️ Could not record inbound message " + messageSid + ": " + e.getMessage());
+        }
+        return true;
+    }
+
+    public void complete(String messageSid) {
+        if (messageSid == null || messageSid.isBlank()) return;
+        try {
+            redis.opsForValue().set(KEY_PREFIX + messageSid, "done", Duration.ofHours(ttlHours));
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Could not mark inbound message " + messageSid + " as done: " + e.getMessage());
+        }
+    }
+
+    // Gives up a claim so a later retry of the same message is processed
+    public void release(String messageSid) {
+        if (messageSid == null || messageSid.isBlank()) return;
+        seen.remove(messageSid);
+        try {
+            redis.delete(KEY_PREFIX + messageSid);
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Could not release inbound message " + messageSid + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,306 @@
+package com.sheryl.slackagent.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.History;
+import com.google.api.services.gmail.model.ListHistoryResponse;
+import com.google.api.services.gmail.model.Profile;
+import com.google.api.services.gmail.model.WatchRequest;
+import com.google.api.services.gmail.model.WatchResponse;
+import com.sheryl.slackagent.tools.WhatsAppTools;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Tells users about new inbox mail without them asking. Gmail changes arrive either as Pub/Sub pushes for a
+// users.watch subscription ("push") or from a periodic history poll ("poll"); either way the user's history
+// is read from a cursor kept in Redis, new unread inbox messages are collected in Redis for a debounce window
+// and one digest per window goes out on WhatsApp, optionally summarized by the model in a single call.
+@Service
+public class InboxWatcher {
+
+    private static final String WATCHERS_KEY = "sheryl:inbox:watchers";
+    private static final String EMAIL_KEY = "sheryl:inbox:email";
+    private static final String HISTORY_KEY = "sheryl:inbox:history";
+    private static final String LOCK_PREFIX = "sheryl:inbox:lock:";
+    private static final String PENDING_PREFIX = "sheryl:inbox:pending:";
+    private static final String WINDOW_PREFIX = "sheryl:inbox:window:";
+
+    private static final Duration LOCK_TTL = Duration.ofSeconds(30);
+    private static final Duration PENDING_TTL = Duration.ofDays(1);
+    private static final long RETRY_SECONDS = 2;
+
+    // Deletes the lock only while it still holds this caller's token
+    private static final RedisScript<Long> UNLOCK = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end
+            return 0
+            """, Long.class);
+
+    // Adds messages to the user's pending list; returns 1 when they opened a new window, whose flush the
+    // caller then schedules
+    private static final RedisScript<Long> COLLECT = new DefaultRedisScript<>("""
+            for i = 3, #ARGV do redis.call('RPUSH', KEYS[1], ARGV[i]) end
+            redis.call('EXPIRE', KEYS[1], ARGV[2])
+            if redis.call('SET', KEYS[2], '1', 'NX', 'EX', ARGV[1]) then return 1 end
+            return 0
+            """, Long.class);
+
+    // Takes everything pending and closes the window
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> DRAIN = new DefaultRedisScript<>("""
+            local pending = redis.call('LRANGE', KEYS[1], 0, -1)
+            redis.call('DEL', KEYS[1], KEYS[2])
+            return pending
+            """, List.class);
+
+    private final GmailAuthService gmailAuthService;
+    private final MailboxIndex mailboxIndex;
+    private final WhatsAppTools whatsAppTools;
+    private final ContextService contextService;
+    private final ConversationMemory memory;
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry registry;
+
+    @Value("${sheryl.inbox.enabled:false}")
+    private boolean enabled;
+
+    // "push" or "poll"
+    @Value("${sheryl.inbox.mode:push}")
+    private String mode;
+
+    // Pub/Sub topic Gmail publishes to, e.g. projects/<project>/topics/<topic>
+    @Value("${sheryl.inbox.topic:}")
+    private String topic;
+
+    @Value("${sheryl.inbox.debounce-seconds:120}")
+    private long debounceSeconds;
+
+    @Value("${sheryl.inbox.summarize:false}")
+    private boolean summarize;
+
+    @Value("${sheryl.inbox.max-digest-items:10}")
+    private int maxDigestItems;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().factory());
+    private final ExecutorService worker = Executors.newVirtualThreadPerTaskExecutor();
+
+    public InboxWatcher(GmailAuthService gmailAuthService, MailboxIndex mailboxIndex, WhatsAppTools whatsAppTools,
+                        ContextService contextService, ConversationMemory memory, StringRedisTemplate redis,
+                        ObjectMapper objectMapper, MeterRegistry registry) {
+        this.gmailAuthService = gmailAuthService;
+        this.mailboxIndex = mailboxIndex;
+        this.whatsAppTools = whatsAppTools;
+        this.contextService = contextService;
+        this.memory = memory;
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.registry = registry;
+    }
+
+    // Starts watching the user's inbox; called after they authorize Gmail and again to renew push subscriptions
+    public void watch(String userId) {
+        if (!enabled) return;
+        try {
+            Gmail service = gmailAuthService.getGmailService(userId);
+            Profile profile = service.users().getProfile("me").execute();
+            BigInteger historyId = profile.getHistoryId();
+
+            if (isPush()) {
+                if (topic.isBlank()) throw new IllegalStateException("sheryl.inbox.topic is not set");
+                WatchResponse watch = service.users().watch("me", new WatchRequest()
+                        .setTopicName(topic)
+                        .setLabelIds(List.of("INBOX"))).execute();
+                historyId = watch.getHistoryId();
+            }
+
+            redis.opsForSet().add(WATCHERS_KEY, userId);
+            redis.opsForHash().put(EMAIL_KEY, profile.getEmailAddress().toLowerCase(Locale.ROOT), userId);
+            // Keep an existing cursor so a renewal doesn't skip mail that arrived in between
+            redis.opsForHash().putIfAbsent(HISTORY_KEY, userId, historyId.toString());
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not watch the inbox of " + userId + ": " + e.getMessage());
+        }
+    }
+
+    // Gmail push notifications carry the mailbox address and its latest historyId
+    public void pushed(String emailAddress, String historyId) {
+        if (!enabled || emailAddress == null) return;
+        Object userId = redis.opsForHash().get(EMAIL_KEY, emailAddress.toLowerCase(Locale.ROOT));
+        if (userId == null) {
+            System.err.println("⚠️ Push for an unwatched mailbox " + emailAddress + " (historyId " + historyId + ")");
+            return;
+        }
+        worker.submit(() -> changed(userId.toString()));
+    }
+
+    // users.watch subscriptions expire after 7 days
+    @Scheduled(fixedDelayString = "${sheryl.inbox.renew-ms:86400000}", initialDelayString = "${sheryl.inbox.renew-ms:86400000}")
+    public void renewWatches() {
+        if (!enabled || !isPush()) return;
+        Set<String> watchers = redis.opsForSet().members(WATCHERS_KEY);
+        if (watchers != null) watchers.forEach(userId -> worker.submit(() -> watch(userId)));
+    }
+
+    @Scheduled(fixedDelayString = "${sheryl.inbox.poll-ms:60000}")
+    public void poll() {
+        if (!enabled || isPush()) return;
+        try {
+            Set<String> watchers = redis.opsForSet().members(WATCHERS_KEY);
+            if (watchers != null) watchers.forEach(userId -> worker.submit(() -> changed(userId)));
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Inbox poll failed: " + e.getMessage());
+        }
+    }
+
+    // Reads the user's history since the cursor. One instance at a time per user; a change that arrives
+    // while another holds the lock is retried shortly so it isn't lost. The cursor only moves once the new
+    // messages are fetched, so a failed fetch is read again on the next change.
+    private void changed(String userId) {
+        String lock = LOCK_PREFIX + userId;
+        String token = UUID.randomUUID().toString();
+        if (!Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(lock, token, LOCK_TTL))) {
+            timer.schedule(() -> worker.submit(() -> changed(userId)), RETRY_SECONDS, TimeUnit.SECONDS);
+            return;
+        }
+        try {
+            Gmail service = gmailAuthService.getGmailService(userId);
+            Object cursor = redis.opsForHash().get(HISTORY_KEY, userId);
+            if (cursor == null) {
+                redis.opsForHash().put(HISTORY_KEY, userId, service.users().getProfile("me").execute().getHistoryId().toString());
+                return;
+            }
+
+            Set<String> added = new LinkedHashSet<>();
+            BigInteger latest;
+            try {
+                latest = newMessages(service, new BigInteger(cursor.toString()), added);
+            } catch (GoogleJsonResponseException e) {
+                if (e.getStatusCode() != 404) throw e;
+                // The cursor is older than the history Gmail keeps; start again from now
+                System.err.println("⚠️ Inbox history for " + userId + " expired, resetting the cursor");
+                latest = service.users().getProfile("me").execute().getHistoryId();
+            }
+            if (!added.isEmpty()) {
+                List<MailboxIndex.IndexedMessage> fetched = mailboxIndex.fetch(service, new ArrayList<>(added));
+                mailboxIndex.putAll(userId, fetched);
+                List<MailboxIndex.IndexedMessage> unread = fetched.stream()
+                        .filter(message -> message.labels().contains("UNREAD") && message.labels().contains("INBOX"))
+                        .toList();
+                if (!unread.isEmpty()) collect(userId, unread);
+            }
+            redis.opsForHash().put(HISTORY_KEY, userId, latest.toString());
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not read new mail for " + userId + ": " + e.getMessage());
+        } finally {
+            redis.execute(UNLOCK, List.of(lock), token);
+        }
+    }
+
+    private BigInteger newMessages(Gmail service, BigInteger startHistoryId, Set<String> added) throws Exception {
+        String pageToken = null;
+        BigInteger latest = startHistoryId;
+        do {
+            ListHistoryResponse response = service.users().history()
+                    .list("me")
+                    .setStartHistoryId(startHistoryId)
+                    .setHistoryTypes(List.of("messageAdded"))
+                    .setLabelId("INBOX")
+                    .setPageToken(pageToken)
+                    .execute();
+            if (response.getHistory() != null) {
+                for (History history : response.getHistory()) {
+                    if (history.getMessagesAdded() != null) {
+                        history.getMessagesAdded().forEach(h -> added.add(h.getMessage().getId()));
+                    }
+                }
+            }
+            if (response.getHistoryId() != null) latest = response.getHistoryId();
+            pageToken = response.getNextPageToken();
+        } while (pageToken != null);
+        return latest;
+    }
+
+    // Whichever instance collects the first message of a window starts its timer; everything until it fires,
+    // on any instance, goes into the same digest. Should that instance go away, the window key expires and the
+    // next message opens a window that takes the leftovers along.
+    private void collect(String userId, List<MailboxIndex.IndexedMessage> messages) throws Exception {
+        List<String> args = new ArrayList<>(messages.size() + 2);
+        args.add(Long.toString(Math.max(1, debounceSeconds * 2)));
+        args.add(Long.toString(PENDING_TTL.toSeconds()));
+        for (MailboxIndex.IndexedMessage message : messages) args.add(objectMapper.writeValueAsString(message));
+
+        Long opened = redis.execute(COLLECT, List.of(PENDING_PREFIX + userId, WINDOW_PREFIX + userId), args.toArray());
+        if (opened != null && opened == 1) {
+            timer.schedule(() -> worker.submit(() -> flush(userId)), debounceSeconds, TimeUnit.SECONDS);
+        }
+        registry.counter("sheryl.inbox.messages").increment(messages.size());
+    }
+
+    private void flush(String userId) {
+        List<?> drained = redis.execute(DRAIN, List.of(PENDING_PREFIX + userId, WINDOW_PREFIX + userId));
+        if (drained == null || drained.isEmpty()) return;
+
+        // A history page read twice after a failure may have collected a message twice
+        Map<String, MailboxIndex.IndexedMessage> unique = new LinkedHashMap<>();
+        for (Object item : drained) {
+            try {
+                MailboxIndex.IndexedMessage message = objectMapper.readValue(item.toString(), MailboxIndex.IndexedMessage.class);
+                unique.putIfAbsent(message.id(), message);
+            } catch (Exception e) {
+                System.err.println("⚠️ Unreadable pending message for " + userId + ": " + e.getMessage());
+            }
+        }
+        List<MailboxIndex.IndexedMessage> messages = new ArrayList<>(unique.values());
+        if (messages.isEmpty()) return;
+
+        String digest = digest(messages);
+        if (summarize) {
+            try {
+                contextService.invoke(userId, "New emails arrived in the user's inbox. Summarize them in one short "
+                        + "WhatsApp message, most important first, and mention how many there are:\n" + digest);
+                registry.counter("sheryl.inbox.digests", "style", "summary").increment();
+                return;
+            } catch (Exception e) {
+                System.err.println("⚠️ Could not summarize the inbox digest for " + userId + ", sending it as is: " + e.getMessage());
+            }
+        }
+
+        whatsAppTools.sendMessage(userId, digest);
+        // Lets follow-ups like "open the first one" resolve on the next turn
+        memory.add(userId, new AssistantMessage(digest));
+        registry.counter("sheryl.inbox.digests", "style", "list").increment();
+    }
+
+    private String digest(List<MailboxIndex.IndexedMessage> messages) {
+        StringBuilder digest = new StringBuilder("📬 " + messages.size() + " new email" + (messages.size() == 1 ? "" : "s") + ":");
+        for (MailboxIndex.IndexedMessage message : messages.subList(0, Math.min(messages.size(), maxDigestItems))) {
+            digest.append("\n• *").append(message.from()).append("*: ").append(message.subject());
+            if (summarize && !message.snippet().isBlank()) digest.append(" — ").append(message.snippet());
+        }
+        if (messages.size() > maxDigestItems) digest.append("\n…and ").append(messages.size() - maxDigestItems).append(" more");
+        return digest.toString();
+    }
+
+    private boolean isPush() {
+        return "push".equalsIgnoreCase(mode);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+        worker.close();
+    }
+}
@@ -0,0 +1,185 @@
+package com.sheryl.slackagent.services;
+
+import com.sheryl.slackagent.tools.CalendarTools;
+import com.sheryl.slackagent.tools.GmailTools;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Answers the most common commands without a model round trip. Only whole-message matches are handled;
+// anything else, or any tool failure, goes to the agent.
+@Service
+public class IntentRouter {
+
+    private static final int MAX_UNREAD = 10;
+    private static final int MAX_EVENTS = 50;
+
+    static final Pattern UNREAD = Pattern.compile(
+            "(?:(?:do i have|are there|have i got|check|show(?: me)?|list|get)\\s+)?(?:my\\s+|any\\s+)?(?:new|unread)\\s+(?:e-?mails?|mails?|messages)(?:\\s+in my inbox)?"
+                    + "|check\\s+(?:my\\s+)?(?:e-?mails?|mail|inbox)");
+
+    static final Pattern TODAY = Pattern.compile(
+            "(?:what(?:'s| is)\\s+(?:on\\s+)?(?:my\\s+)?(?:calendar|schedule|agenda)|what(?:'s| is) on|what do i have(?:\\s+on)?|what meetings do i have"
+                    + "|(?:do i have\\s+)?any\\s+(?:meetings|events)|show(?: me)?\\s+my\\s+(?:calendar|schedule|agenda)|(?:my\\s+)?(?:calendar|schedule|agenda|meetings))"
+                    + "(?:\\s+for)?\\s+today"
+                    + "|today'?s\\s+(?:calendar|schedule|agenda|meetings|events)");
+
+    static final Pattern MARK_READ = Pattern.compile(
+            "mark\\s+(it|that|this|them|these|those|all(?: of them)?)\\s+(?:as\\s+)?read");
+
+    static final Pattern STAR = Pattern.compile(
+            "(?:star|flag)\\s+(it|that|this|them|these|those|all(?: of them)?)");
+
+    private static final Pattern LEADING_FILLER = Pattern.compile("^(?:(?:hey|hi|hello|ok|okay|please|pls|sheryl|can you|could you)[,\\s]+)+");
+
+    private final GmailTools gmailTools;
+    private final CalendarTools calendarTools;
+    private final CalendarEventStore calendarEventStore;
+    private final NotificationService notifications;
+    private final ConversationMemory memory;
+
+    @Value("${sheryl.router.enabled:true}")
+    private boolean enabled;
+
+    // Messages from the sender's last unread listing, the target of "mark that as read" / "star it"
+    private final Map<String, List<String>> lastListed = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+                    return size() > 10_000;
+                }
+            });
+
+    public IntentRouter(GmailTools gmailTools, CalendarTools calendarTools, CalendarEventStore calendarEventStore,
+                        NotificationService notifications, ConversationMemory memory) {
+        this.gmailTools = gmailTools;
+        this.calendarTools = calendarTools;
+        this.calendarEventStore = calendarEventStore;
+        this.notifications = notifications;
+        this.memory = memory;
+    }
+
+    // Returns the reply for a recognised command, or empty when the agent should handle the message
+    public Optional<String> route(String conversationId, String text) {
+        if (!enabled || text == null) return Optional.empty();
+        String command = normalize(text);
+
+        // The tools' own notifications are dropped: the turn is never flushed and the reply is sent instead
+        ToolContext toolContext = new ToolContext(Map.of(
+                NotificationService.TURN_KEY, notifications.openTurn(),
+                Senders.TOOL_CONTEXT_KEY, conversationId));
+
+        try {
+            String reply = null;
+            Matcher matcher;
+            if (UNREAD.matcher(command).matches()) {
+                reply = unread(conversationId, toolContext);
+            } else if (TODAY.matcher(command).matches()) {
+                reply = today(conversationId, toolContext);
+            } else if ((matcher = MARK_READ.matcher(command)).matches()) {
+                reply = markRead(conversationId, matcher.group(1), toolContext);
+            } else if ((matcher = STAR.matcher(command)).matches()) {
+                reply = star(conversationId, matcher.group(1), toolContext);
+            }
+            if (reply == null) return Optional.empty();
+
+            // Keep the exchange in memory so follow-ups that do reach the agent have the context
+            memory.add(conversationId, List.of(new UserMessage(text), new AssistantMessage(reply)));
+            return Optional.of(reply);
+        } catch (Exception e) {
+            // Authorization prompts and API errors are explained better by the agent
+            System.err.println("⚠️ Fast path failed for " + conversationId + ", falling back to the agent: " + e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private String unread(String conversationId, ToolContext toolContext) throws Exception {
+        List<Map<String, Object>> messages = gmailTools.listMessages("is:unread", MAX_UNREAD, conversationId, toolContext)
+                .stream()
+                .filter(message -> message.containsKey("id"))
+                .toList();
+
+        lastListed.put(conversationId, messages.stream().map(message -> (String) message.get("id")).toList());
+        if (messages.isEmpty()) return "📭 No unread emails, you're all caught up!";
+
+        StringBuilder reply = new StringBuilder("📩 You have " + messages.size()
+                + (messages.size() == MAX_UNREAD ? "+" : "") + " unread email" + (messages.size() == 1 ? "" : "s") + ":");
+        for (Map<String, Object> message : messages) {
+            reply.append("\n• *").append(message.get("from")).append("*: ").append(message.get("subject"));
+        }
+        return reply.toString();
+    }
+
+    // "Today" is the user's day, in their calendar's time zone
+    private String today(String conversationId, ToolContext toolContext) throws Exception {
+        List<Map<String, String>> listed = calendarTools.listEvents(MAX_EVENTS, conversationId, toolContext);
+        ZoneId zone = calendarEventStore.zone(conversationId);
+        LocalDate today = LocalDate.now(zone);
+
+        List<Map<String, String>> events = listed
+                .stream()
+                .filter(event -> !startDate(event.get("start"), zone).isAfter(today))
+                .toList();
+        if (events.isEmpty()) return "📅 Nothing else on your calendar today.";
+
+        StringBuilder reply = new StringBuilder("📅 Today you have:");
+        for (Map<String, String> event : events) {
+            String start = event.get("start");
+            String time = start.length() > 10
+                    ? OffsetDateTime.parse(start).atZoneSameInstant(zone).toLocalTime().toString()
+                    : "All day";
+            reply.append("\n• ").append(time).append(" – ").append(event.get("summary"));
+        }
+        return reply.toString();
+    }
+
+    private String markRead(String conversationId, String target, ToolContext toolContext) throws Exception {
+        List<String> ids = targets(conversationId, target);
+        if (ids == null) return null;
+
+        gmailTools.markMessagesAsRead(ids, conversationId, toolContext);
+        return ids.size() == 1 ? "✅ Marked as read." : "✅ Marked " + ids.size() + " emails as read.";
+    }
+
+    private String star(String conversationId, String target, ToolContext toolContext) throws Exception {
+        List<String> ids = targets(conversationId, target);
+        if (ids == null) return null;
+
+        gmailTools.flagMessages(ids, "Starred on request", conversationId, toolContext);
+        return ids.size() == 1 ? "⭐ Starred." : "⭐ Starred " + ids.size() + " emails.";
+    }
+
+    // "it"/"that" only resolve when exactly one message was listed; otherwise the agent decides what was meant
+    private List<String> targets(String conversationId, String target) {
+        List<String> ids = lastListed.get(conversationId);
+        if (ids == null || ids.isEmpty()) return null;
+
+        boolean plural = target.startsWith("them") || target.startsWith("these") || target.startsWith("those") || target.startsWith("all");
+        if (!plural && ids.size() != 1) return null;
+        return ids;
+    }
+
+    private static LocalDate startDate(String start, ZoneId zone) {
+        if (start == null) return LocalDate.MAX;
+        return start.length() > 10
+                ? OffsetDateTime.parse(start).atZoneSameInstant(zone).toLocalDate()
+                : LocalDate.parse(start);
+    }
+
+    static String normalize(String text) {
+        String command = text.trim().toLowerCase(Locale.ROOT)
+                .replace('’', '\'')
+                .replaceAll("[?!.]+$", "")
+                .replaceAll("\\s+", " ");
+        return LEADING_FILLER.matcher(command).replaceFirst("").trim();
+    }
+}
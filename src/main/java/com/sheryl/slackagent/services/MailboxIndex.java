@@ -0,0 +1,383 @@
+package com.sheryl.slackagent.services;
+
+import com.google.api.client.googleapis.batch.BatchRequest;
+import com.google.api.client.googleapis.batch.json.JsonBatchCallback;
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.client.googleapis.json.GoogleJsonResponseException;
+import com.google.api.client.http.HttpHeaders;
+import com.google.api.services.gmail.Gmail;
+import com.google.api.services.gmail.model.*;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+@Service
+public class MailboxIndex {
+
+    // Gmail recommends keeping batch requests at or below 50 calls
+    private static final int BATCH_SIZE = 50;
+
+    private static final List<String> METADATA_HEADERS = List.of("From", "Subject");
+
+    private static final Set<String> SYSTEM_LABELS = Set.of("INBOX", "SENT", "DRAFT", "STARRED", "IMPORTANT", "UNREAD");
+
+    private static final List<String> HISTORY_TYPES = List.of("messageAdded", "messageDeleted", "labelAdded", "labelRemoved");
+
+    private final GmailAuthService gmailAuthService;
+
+    @Value("${sheryl.gmail.index-size:1000}")
+    private int indexSize;
+
+    @Value("${sheryl.gmail.sync-interval-seconds:15}")
+    private long syncIntervalSeconds;
+
+    @Value("${sheryl.gmail.index-max-users:500}")
+    private int maxUsers;
+
+    // Least recently used mailboxes are dropped and filled again on their next query
+    private final Map<String, Mailbox> mailboxes = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Mailbox> eldest) {
+                    return size() > maxUsers;
+                }
+            });
+
+    public record IndexedMessage(String id, String threadId, String from, String subject,
+                                 Set<String> labels, long date, String snippet) {
+    }
+
+    private static final class Mailbox {
+        private final Map<String, IndexedMessage> messages = new ConcurrentHashMap<>();
+        private final Object syncLock = new Object();
+
+        private BigInteger historyId;
+        private volatile boolean complete;
+        // Every message dated from here on is indexed; older ones may be missing
+        private volatile long windowStart = Long.MAX_VALUE;
+        private volatile long lastSyncMillis;
+    }
+
+    public MailboxIndex(GmailAuthService gmailAuthService) {
+        this.gmailAuthService = gmailAuthService;
+    }
+
+    // Answers the query from the index, or returns empty when only the Gmail API can answer it
+    public Optional<List<IndexedMessage>> query(String userId, String query, int limit) throws Exception {
+        LocalQuery parsed = LocalQuery.parse(query);
+        if (parsed == null) return Optional.empty();
+
+        sync(userId);
+        Mailbox mailbox = mailbox(userId);
+        return answer(mailbox.messages.values(), parsed, limit, mailbox.complete, mailbox.windowStart);
+    }
+
+    // Newest matches first. Any query, label-scoped ones too, may match mail older than the indexed
+    // window, so a short result only counts when the index holds the whole mailbox. Older messages that
+    // got in some other way are left out, or they would pass for the newest matches.
+    static Optional<List<IndexedMessage>> answer(Collection<IndexedMessage> messages, LocalQuery parsed,
+                                                 int limit, boolean complete, long windowStart) {
+        List<IndexedMessage> result = messages.stream()
+                .filter(m -> complete || m.date() >= windowStart)
+                .filter(m -> !m.labels().contains("SPAM") && !m.labels().contains("TRASH"))
+                .filter(parsed.filter())
+                .sorted(Comparator.comparingLong(IndexedMessage::date).reversed())
+                .limit(limit)
+                .toList();
+
+        if (result.size() < limit && !complete) return Optional.empty();
+        return Optional.of(result);
+    }
+
+    public void sync(String userId) throws Exception {
+        Mailbox mailbox = mailbox(userId);
+        if (System.currentTimeMillis() - mailbox.lastSyncMillis < TimeUnit.SECONDS.toMillis(syncIntervalSeconds)) return;
+
+        synchronized (mailbox.syncLock) {
+            if (System.currentTimeMillis() - mailbox.lastSyncMillis < TimeUnit.SECONDS.toMillis(syncIntervalSeconds)) return;
+
+            Gmail service = gmailAuthService.getGmailService(userId);
+            if (mailbox.historyId == null) {
+                fill(mailbox, service);
+            } else {
+                try {
+                    applyHistory(mailbox, service);
+                } catch (GoogleJsonResponseException e) {
+                    if (e.getStatusCode() != 404) throw e;
+                    // History no longer available for our historyId, rebuild from scratch
+                    fill(mailbox, service);
+                }
+            }
+            mailbox.lastSyncMillis = System.currentTimeMillis();
+        }
+    }
+
+    private void fill(Mailbox mailbox, Gmail service) throws IOException {
+        // Take the historyId first so changes made during the fill are replayed by the next delta
+        BigInteger startHistoryId = service.users().getProfile("me").execute().getHistoryId();
+
+        List<String> ids = new ArrayList<>();
+        String pageToken = null;
+        do {
+            ListMessagesResponse response = service.users().messages()
+                    .list("me")
+                    .setMaxResults((long) Math.min(500, indexSize - ids.size()))
+                    .setPageToken(pageToken)
+                    .setFields("messages/id,nextPageToken")
+                    .execute();
+            if (response.getMessages() != null) {
+                response.getMessages().forEach(m -> ids.add(m.getId()));
+            }
+            pageToken = response.getNextPageToken();
+        } while (pageToken != null && ids.size() < indexSize);
+
+        List<IndexedMessage> fetched = fetch(service, ids);
+        synchronized (mailbox) {
+            mailbox.messages.clear();
+            fetched.forEach(m -> mailbox.messages.put(m.id(), m));
+            mailbox.complete = pageToken == null;
+            mailbox.windowStart = fetched.stream().mapToLong(IndexedMessage::date).min().orElse(Long.MAX_VALUE);
+        }
+        mailbox.historyId = startHistoryId;
+    }
+
+    private void applyHistory(Mailbox mailbox, Gmail service) throws IOException {
+        Set<String> added = new LinkedHashSet<>();
+        String pageToken = null;
+        ListHistoryResponse response;
+
+        do {
+            response = service.users().history()
+                    .list("me")
+                    .setStartHistoryId(mailbox.historyId)
+                    .setHistoryTypes(HISTORY_TYPES)
+                    .setPageToken(pageToken)
+                    .execute();
+
+            if (response.getHistory() != null) {
+                for (History history : response.getHistory()) {
+                    if (history.getMessagesAdded() != null) {
+                        history.getMessagesAdded().forEach(h -> added.add(h.getMessage().getId()));
+                    }
+                    if (history.getMessagesDeleted() != null) {
+                        history.getMessagesDeleted().forEach(h -> {
+                            added.remove(h.getMessage().getId());
+                            mailbox.messages.remove(h.getMessage().getId());
+                        });
+                    }
+                    if (history.getLabelsAdded() != null) {
+                        history.getLabelsAdded().forEach(h -> addLabels(mailbox, h.getMessage().getId(), h.getLabelIds()));
+                    }
+                    if (history.getLabelsRemoved() != null) {
+                        history.getLabelsRemoved().forEach(h -> removeLabels(mailbox, h.getMessage().getId(), h.getLabelIds()));
+                    }
+                }
+            }
+            pageToken = response.getNextPageToken();
+        } while (pageToken != null);
+
+        fetch(service, new ArrayList<>(added)).forEach(m -> mailbox.messages.put(m.id(), m));
+        trim(mailbox);
+        if (response.getHistoryId() != null) mailbox.historyId = response.getHistoryId();
+    }
+
+    // Write-through for label changes and deletes made by the tools
+    public void addLabels(String userId, String messageId, Collection<String> labelIds) {
+        addLabels(mailbox(userId), messageId, labelIds);
+    }
+
+    public void removeLabels(String userId, String messageId, Collection<String> labelIds) {
+        removeLabels(mailbox(userId), messageId, labelIds);
+    }
+
+    public void remove(String userId, String messageId) {
+        mailbox(userId).messages.remove(messageId);
+    }
+
+    // Refreshes messages fetched elsewhere. Only those inside the indexed window are kept, so search results
+    // from further back can't count as the newest matches.
+    public void putAll(String userId, Collection<IndexedMessage> fetched) {
+        Mailbox mailbox = mailboxes.get(userId);
+        if (mailbox == null) return;
+        synchronized (mailbox) {
+            fetched.stream()
+                    .filter(m -> mailbox.complete || m.date() >= mailbox.windowStart)
+                    .forEach(m -> mailbox.messages.put(m.id(), m));
+        }
+        trim(mailbox);
+    }
+
+    public void forget(String userId) {
+        mailboxes.remove(userId);
+    }
+
+    private Mailbox mailbox(String userId) {
+        return mailboxes.computeIfAbsent(userId, key -> new Mailbox());
+    }
+
+    // New mail grows the index past its size; the oldest tenth beyond it is dropped and the window starts
+    // after the newest message dropped
+    private void trim(Mailbox mailbox) {
+        if (mailbox.messages.size() <= indexSize + indexSize / 10) return;
+        synchronized (mailbox) {
+            List<IndexedMessage> oldestFirst = mailbox.messages.values().stream()
+                    .sorted(Comparator.comparingLong(IndexedMessage::date))
+                    .toList();
+            int drop = oldestFirst.size() - indexSize;
+            if (drop <= 0) return;
+
+            oldestFirst.subList(0, drop).forEach(m -> mailbox.messages.remove(m.id()));
+            mailbox.windowStart = Math.max(mailbox.windowStart, oldestFirst.get(drop - 1).date() + 1);
+            mailbox.complete = false;
+        }
+    }
+
+    private static void addLabels(Mailbox mailbox, String messageId, Collection<String> labelIds) {
+        if (labelIds == null) return;
+        mailbox.messages.computeIfPresent(messageId, (id, m) -> {
+            Set<String> labels = new HashSet<>(m.labels());
+            labels.addAll(labelIds);
+            return withLabels(m, labels);
+        });
+    }
+
+    private static void removeLabels(Mailbox mailbox, String messageId, Collection<String> labelIds) {
+        if (labelIds == null) return;
+        mailbox.messages.computeIfPresent(messageId, (id, m) -> {
+            Set<String> labels = new HashSet<>(m.labels());
+            labels.removeAll(labelIds);
+            return withLabels(m, labels);
+        });
+    }
+
+    // Fetches headers, labels and snippet for the given IDs in batch calls, keeping their order
+    public List<IndexedMessage> fetch(Gmail service, List<String> ids) throws IOException {
+        List<IndexedMessage> result = new ArrayList<>(ids.size());
+
+        for (int start = 0; start < ids.size(); start += BATCH_SIZE) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + BATCH_SIZE));
+            Message[] fetched = new Message[chunk.size()];
+            // batch() alone would build the batch call without the client's initializer, so no auth and no slot
+            BatchRequest batch = service.batch(service.getRequestFactory().getInitializer());
+
+            for (int i = 0; i < chunk.size(); i++) {
+                int index = i;
+                service.users().messages().get("me", chunk.get(i))
+                        .setFormat("metadata")
+                        .setMetadataHeaders(METADATA_HEADERS)
+                        .setFields("id,threadId,labelIds,snippet,internalDate,payload/headers")
+                        .queue(batch, new JsonBatchCallback<Message>() {
+                            @Override
+                            public void onSuccess(Message message, HttpHeaders responseHeaders) {
+                                fetched[index] = message;
+                            }
+
+                            @Override
+                            public void onFailure(GoogleJsonError error, HttpHeaders responseHeaders) {
+                                System.err.println("⚠️ Could not fetch message " + chunk.get(index) + ": " + error.getMessage());
+                            }
+                        });
+            }
+            batch.execute();
+
+            for (Message message : fetched) {
+                if (message != null) result.add(toIndexed(message));
+            }
+        }
+        return result;
+    }
+
+    private static IndexedMessage toIndexed(Message message) {
+        return new IndexedMessage(
+                message.getId(),
+                message.getThreadId(),
+                header(message, "From"),
+                header(message, "Subject"),
+                message.getLabelIds() != null ? Set.copyOf(message.getLabelIds()) : Set.of(),
+                message.getInternalDate() != null ? message.getInternalDate() : 0L,
+                message.getSnippet() != null ? message.getSnippet() : ""
+        );
+    }
+
+    private static IndexedMessage withLabels(IndexedMessage m, Set<String> labels) {
+        return new IndexedMessage(m.id(), m.threadId(), m.from(), m.subject(), Set.copyOf(labels), m.date(), m.snippet());
+    }
+
+    private static String header(Message msg, String name) {
+        if (msg.getPayload() == null || msg.getPayload().getHeaders() == null) return "Unknown";
+        return msg.getPayload().getHeaders().stream()
+                .filter(h -> h.getName().equalsIgnoreCase(name))
+                .findFirst()
+                .map(MessagePartHeader::getValue)
+                .orElse("Unknown");
+    }
+
+    // The subset of Gmail search syntax the index can answer: is:, in:, label:, from: and subject: terms
+    record LocalQuery(Predicate<IndexedMessage> filter) {
+
+        static LocalQuery parse(String query) {
+            Predicate<IndexedMessage> filter = m -> true;
+
+            for (String term : terms(query)) {
+                int colon = term.indexOf(':');
+                if (colon <= 0 || colon == term.length() - 1) return null;
+
+                String operator = term.substring(0, colon).toLowerCase();
+                String value = unquote(term.substring(colon + 1)).toLowerCase();
+
+                Predicate<IndexedMessage> clause;
+                switch (operator) {
+                    case "is" -> {
+                        clause = switch (value) {
+                            case "unread" -> m -> m.labels().contains("UNREAD");
+                            case "read" -> m -> !m.labels().contains("UNREAD");
+                            case "starred" -> m -> m.labels().contains("STARRED");
+                            case "important" -> m -> m.labels().contains("IMPORTANT");
+                            default -> null;
+                        };
+                    }
+                    case "in", "label" -> {
+                        // User labels are stored by ID, so only system labels can be matched by name
+                        String label = value.toUpperCase();
+                        clause = SYSTEM_LABELS.contains(label) ? m -> m.labels().contains(label) : null;
+                    }
+                    case "from" -> clause = m -> m.from().toLowerCase().contains(value);
+                    case "subject" -> clause = m -> m.subject().toLowerCase().contains(value);
+                    default -> clause = null;
+                }
+                if (clause == null) return null;
+                filter = filter.and(clause);
+            }
+            return new LocalQuery(filter);
+        }
+
+        private static List<String> terms(String query) {
+            List<String> terms = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean quoted = false;
+            for (char c : query.trim().toCharArray()) {
+                if (c == '"') quoted = !quoted;
+                if (Character.isWhitespace(c) && !quoted) {
+                    if (!current.isEmpty()) terms.add(current.toString());
+                    current.setLength(0);
+                } else {
+                    current.append(c);
+                }
+            }
+            if (!current.isEmpty()) terms.add(current.toString());
+            return terms;
+        }
+
+        private static String unquote(String value) {
+            return value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")
+                    ? value.substring(1, value.length() - 1)
+                    : value;
+        }
+    }
+}
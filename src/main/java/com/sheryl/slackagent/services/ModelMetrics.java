@@ -0,0 +1,54 @@
+package com.sheryl.slackagent.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.ai.chat.metadata.Usage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ModelMetrics {
+
+    private final MeterRegistry registry;
+
+    public ModelMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public Timer.Sample start() {
+        return Timer.start(registry);
+    }
+
+    // Latency covers the whole call, including any tool calls the model made in between
+    public void record(String client, ModelTiers.Tier tier, Timer.Sample sample, ChatResponse response) {
+        sample.stop(registry.timer("sheryl.model.calls", "client", client, "tier", tier.tag(), "outcome", "success"));
+        if (response == null) return;
+
+        Usage usage = response.getMetadata().getUsage();
+        if (usage != null) {
+            registry.counter("sheryl.model.tokens", "client", client, "tier", tier.tag(), "type", "input").increment(count(usage.getPromptTokens()));
+            registry.counter("sheryl.model.tokens", "client", client, "tier", tier.tag(), "type", "output").increment(count(usage.getCompletionTokens()));
+        }
+
+        // Bedrock reports cached prefix tokens in the response metadata; any cache read counts as a hit
+        int read = tokens(response, "cacheReadInputTokens");
+        int write = tokens(response, "cacheWriteInputTokens");
+
+        registry.counter("sheryl.prompt.cache.requests", "client", client, "result", read > 0 ? "hit" : "miss").increment();
+        registry.counter("sheryl.prompt.cache.tokens", "client", client, "type", "read").increment(read);
+        registry.counter("sheryl.prompt.cache.tokens", "client", client, "type", "write").increment(write);
+    }
+
+    public void failed(String client, ModelTiers.Tier tier, Timer.Sample sample, Throwable error) {
+        sample.stop(registry.timer("sheryl.model.calls", "client", client, "tier", tier.tag(), "outcome", error.getClass().getSimpleName()));
+    }
+
+    private static int count(Integer tokens) {
+        return tokens != null ? tokens : 0;
+    }
+
+    private int tokens(ChatResponse response, String key) {
+        Object value = response.getMetadata().get(key);
+        return value instanceof Number number ? number.intValue() : 0;
+    }
+}
@@ -0,0 +1,94 @@
+package com.sheryl.slackagent.services;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.bedrock.converse.BedrockChatOptions;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+// Two Bedrock model tiers: "large" is spring.ai.bedrock.converse.chat.options.*, "fast" a smaller model for
+// formatting, summaries and simple turns. Leaving sheryl.models.fast.model empty sends everything to large.
+@Component
+public class ModelTiers {
+
+    public enum Tier {
+        FAST, LARGE;
+
+        public String tag() {
+            return name().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    // Requests that chain actions or act on many items need the large model's planning
+    private static final Pattern MULTI_STEP = Pattern.compile(
+            "\\b(?:and then|then|after that|afterwards|also|as well|every|each|all of|both)\\b"
+                    + "|\\band\\s+(?:send|reply|email|mail|forward|schedule|create|book|move|cancel|delete|mark|flag|star|remind|tell|invite)\\b");
+
+    private final MeterRegistry registry;
+
+    @Value("${sheryl.models.fast.model:}")
+    private String fastModel;
+
+    @Value("${sheryl.models.fast.temperature:0.3}")
+    private double fastTemperature;
+
+    @Value("${sheryl.models.fast.max-tokens:1024}")
+    private int fastMaxTokens;
+
+    @Value("${sheryl.models.simple-turn-max-chars:120}")
+    private int simpleTurnMaxChars;
+
+    public ModelTiers(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public boolean enabled() {
+        return fastModel != null && !fastModel.isBlank();
+    }
+
+    // Options for a tier's ChatClient; the large tier keeps the chat model's configured defaults
+    public BedrockChatOptions.Builder options(Tier tier) {
+        BedrockChatOptions.Builder options = BedrockChatOptions.builder();
+        if (tier == Tier.FAST && enabled()) {
+            options.model(fastModel).temperature(fastTemperature).maxTokens(fastMaxTokens);
+        }
+        return options;
+    }
+
+    // Short single-step messages ("any new mail?", "thanks!", "remind me at 5 to call mom") go to the fast tier
+    public Tier classify(String client, String prompt) {
+        Tier tier = Tier.LARGE;
+        if (enabled() && prompt != null) {
+            String text = prompt.strip().toLowerCase(Locale.ROOT);
+            long sentences = text.chars().filter(c -> c == '?' || c == '.' || c == '\n').count();
+            if (text.length() <= simpleTurnMaxChars && sentences <= 1 && !MULTI_STEP.matcher(text).find()) {
+                tier = Tier.FAST;
+            }
+        }
+        registry.counter("sheryl.model.routing", "client", client, "tier", tier.tag()).increment();
+        return tier;
+    }
+
+    // Runs the call on the given tier. A fast-tier failure is retried once on the large tier when canRetry
+    // says nothing irreversible happened; shedding (OverloadedException) is never retried.
+    public <T> T call(String client, Tier tier, Function<Tier, T> attempt, BooleanSupplier canRetry) {
+        try {
+            return attempt.apply(tier);
+        } catch (OverloadedException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            if (tier != Tier.FAST || !canRetry.getAsBoolean()) throw e;
+            fellBack(client, e);
+            return attempt.apply(Tier.LARGE);
+        }
+    }
+
+    public void fellBack(String client, Throwable error) {
+        System.err.println("⚠️ Fast model failed for " + client + ", retrying on the large model: " + error.getMessage());
+        registry.counter("sheryl.model.fallbacks", "client", client).increment();
+    }
+}
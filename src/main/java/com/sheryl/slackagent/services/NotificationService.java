@@ -0,0 +1,72 @@
+package com.sheryl.slackagent.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Service
+public class NotificationService {
+
+    public static final String TURN_KEY = "sheryl.turn";
+
+    private final ContextService contextService;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public NotificationService(ContextService contextService) {
+        this.contextService = contextService;
+    }
+
+    public Turn openTurn() {
+        return new Turn();
+    }
+
+    // Tools report results here; inside a turn they are held until the turn ends
+    public void notify(ToolContext toolContext, String notifyNumber, String result) {
+        Turn turn = toolContext != null ? (Turn) toolContext.getContext().get(TURN_KEY) : null;
+        if (turn != null) {
+            turn.add(notifyNumber, result);
+        } else {
+            dispatch(notifyNumber, List.of(result));
+        }
+    }
+
+    // Sends one formatted message per recipient for everything the turn's tools reported
+    public void flush(Turn turn) {
+        turn.drain().forEach(this::dispatch);
+    }
+
+    private void dispatch(String notifyNumber, List<String> results) {
+        executor.submit(() -> {
+            try {
+                contextService.invoke(notifyNumber, String.join("\n\n", results));
+            } catch (Exception e) {
+                System.err.println("❌ Failed to notify " + notifyNumber + ": " + e.getMessage());
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.close();
+    }
+
+    public static final class Turn {
+
+        private final Map<String, List<String>> results = new LinkedHashMap<>();
+
+        private synchronized void add(String notifyNumber, String result) {
+            results.computeIfAbsent(notifyNumber, key -> new ArrayList<>()).add(result);
+        }
+
+        private synchronized Map<String, List<String>> drain() {
+            Map<String, List<String>> drained = new LinkedHashMap<>(results);
+            results.clear();
+            return drained;
+        }
+    }
+}
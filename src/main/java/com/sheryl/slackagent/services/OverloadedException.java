@@ -0,0 +1,16 @@
+package com.sheryl.slackagent.services;
+
+// Thrown instead of queueing when a downstream's concurrency limit and wait queue are full
+public class OverloadedException extends RuntimeException {
+
+    private final String downstream;
+
+    public OverloadedException(String downstream, String reason) {
+        super(downstream + " is overloaded: " + reason);
+        this.downstream = downstream;
+    }
+
+    public String getDownstream() {
+        return downstream;
+    }
+}
@@ -0,0 +1,162 @@
+package com.sheryl.slackagent.services;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.DefaultToolCallingManager;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionException;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Runs the tool calls of one assistant message concurrently on virtual threads, so a turn that asks for
+// several tools takes as long as the slowest one. Responses go back to the model in the order requested;
+// a tool that fails or misses the round's deadline gets an error response without affecting the others.
+@Component
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    // Optional AtomicInteger counting the tool calls started in the turn, so a failed turn can tell whether it had side effects
+    public static final String TOOL_CALLS_KEY = "sheryl.tool-calls";
+
+    // Tools without side effects; a late one is interrupted. Any other tool may already have acted,
+    // so it is left to finish and the model is told not to repeat it.
+    private static final Set<String> READ_ONLY_TOOLS = Set.of(
+            "list_gmail_messages", "list_calendar_events", "search_calendar_events_advanced", "list_reminders");
+
+    private final ToolCallingManager definitions;
+    private final ToolCallbackResolver toolCallbackResolver;
+    private final ToolExecutionExceptionProcessor exceptionProcessor;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Value("${sheryl.tools.round-timeout-seconds:60}")
+    private long roundTimeoutSeconds;
+
+    public ParallelToolCallingManager(ToolCallbackResolver toolCallbackResolver,
+                                      ToolExecutionExceptionProcessor exceptionProcessor) {
+        this.definitions = DefaultToolCallingManager.builder()
+                .toolCallbackResolver(toolCallbackResolver)
+                .toolExecutionExceptionProcessor(exceptionProcessor)
+                .build();
+        this.toolCallbackResolver = toolCallbackResolver;
+        this.exceptionProcessor = exceptionProcessor;
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return definitions.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("No tool call requested by the chat model"));
+
+        List<Message> history = new ArrayList<>(prompt.copy().getInstructions());
+        history.add(assistantMessage);
+
+        Map<String, Object> context = new HashMap<>();
+        if (prompt.getOptions() instanceof ToolCallingChatOptions options && options.getToolContext() != null) {
+            context.putAll(options.getToolContext());
+        }
+        context.put(ToolContext.TOOL_CALL_HISTORY, List.copyOf(history));
+        ToolContext toolContext = new ToolContext(context);
+        // Each round of tool calls in a turn gets the full timeout
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(roundTimeoutSeconds);
+
+        List<ToolCallback> callbacks = prompt.getOptions() instanceof ToolCallingChatOptions options
+                ? options.getToolCallbacks()
+                : List.of();
+
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        if (context.get(TOOL_CALLS_KEY) instanceof AtomicInteger started) started.addAndGet(toolCalls.size());
+        List<Future<String>> running = new ArrayList<>(toolCalls.size());
+        boolean returnDirect = true;
+
+        for (AssistantMessage.ToolCall toolCall : toolCalls) {
+            ToolCallback callback = resolve(toolCall.name(), callbacks);
+            if (callback == null) {
+                running.add(CompletableFuture.completedFuture("Error: no tool named " + toolCall.name()));
+                returnDirect = false;
+                continue;
+            }
+            returnDirect &= callback.getToolMetadata().returnDirect();
+            running.add(executor.submit(() -> call(callback, toolCall, toolContext)));
+        }
+
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>(toolCalls.size());
+        for (int i = 0; i < toolCalls.size(); i++) {
+            AssistantMessage.ToolCall toolCall = toolCalls.get(i);
+            responses.add(new ToolResponseMessage.ToolResponse(toolCall.id(), toolCall.name(),
+                    await(toolCall.name(), running.get(i), deadline)));
+        }
+
+        history.add(ToolResponseMessage.builder().responses(responses).build());
+        return ToolExecutionResult.builder()
+                .conversationHistory(history)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    private ToolCallback resolve(String name, List<ToolCallback> callbacks) {
+        for (ToolCallback callback : callbacks) {
+            if (callback.getToolDefinition().name().equals(name)) return callback;
+        }
+        return toolCallbackResolver.resolve(name);
+    }
+
+    private String call(ToolCallback callback, AssistantMessage.ToolCall toolCall, ToolContext toolContext) {
+        String arguments = toolCall.arguments() == null || toolCall.arguments().isBlank() ? "{}" : toolCall.arguments();
+        try {
+            return callback.call(arguments, toolContext);
+        } catch (ToolExecutionException e) {
+            return exceptionProcessor.process(e);
+        }
+    }
+
+    private String await(String name, Future<String> result, long deadline) {
+        try {
+            return result.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (READ_ONLY_TOOLS.contains(name)) {
+                result.cancel(true);
+                System.err.println("⚠️ Tool " + name + " missed the round deadline");
+                return "Error: " + name + " did not finish in time";
+            }
+            System.err.println("⚠️ Tool " + name + " missed the round deadline, leaving it running");
+            return name + " is still running and its outcome is unknown; it may have already taken effect. "
+                    + "Do not call it again; tell the user it may or may not have gone through.";
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            System.err.println("❌ Tool " + name + " failed: " + cause.getMessage());
+            return "Error: " + name + " failed: " + cause.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(true);
+            return "Error: " + name + " was interrupted";
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.close();
+    }
+}
@@ -0,0 +1,87 @@
+package com.sheryl.slackagent.services;
+
+import com.google.api.client.util.IOUtils;
+import com.google.api.client.util.store.AbstractDataStore;
+import com.google.api.client.util.store.AbstractDataStoreFactory;
+import com.google.api.client.util.store.DataStore;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.*;
+
+// Google client DataStoreFactory backed by Redis hashes, so OAuth tokens are shared by every instance
+@Component
+public class RedisDataStoreFactory extends AbstractDataStoreFactory {
+
+    private static final String KEY_PREFIX = "sheryl:google:";
+
+    private final StringRedisTemplate redis;
+
+    public RedisDataStoreFactory(StringRedisTemplate redis) {
+        this.redis = redis;
+    }
+
+    @Override
+    protected <V extends Serializable> DataStore<V> createDataStore(String id) {
+        return new RedisDataStore<>(this, id);
+    }
+
+    private static final class RedisDataStore<V extends Serializable> extends AbstractDataStore<V> {
+
+        private final StringRedisTemplate redis;
+        private final String key;
+
+        private RedisDataStore(RedisDataStoreFactory factory, String id) {
+            super(factory, id);
+            this.redis = factory.redis;
+            this.key = KEY_PREFIX + id;
+        }
+
+        @Override
+        public Set<String> keySet() {
+            Set<Object> keys = redis.opsForHash().keys(key);
+            Set<String> result = new HashSet<>();
+            keys.forEach(k -> result.add((String) k));
+            return Collections.unmodifiableSet(result);
+        }
+
+        @Override
+        public Collection<V> values() throws IOException {
+            List<V> result = new ArrayList<>();
+            for (Object value : redis.opsForHash().values(key)) {
+                result.add(decode((String) value));
+            }
+            return Collections.unmodifiableList(result);
+        }
+
+        @Override
+        public V get(String userId) throws IOException {
+            Object value = redis.opsForHash().get(key, userId);
+            return value == null ? null : decode((String) value);
+        }
+
+        @Override
+        public DataStore<V> set(String userId, V value) throws IOException {
+            redis.opsForHash().put(key, userId, Base64.getEncoder().encodeToString(IOUtils.serialize(value)));
+            return this;
+        }
+
+        @Override
+        public DataStore<V> clear() {
+            redis.delete(key);
+            return this;
+        }
+
+        @Override
+        public DataStore<V> delete(String userId) {
+            redis.opsForHash().delete(key, userId);
+            return this;
+        }
+
+        private V decode(String value) throws IOException {
+            return IOUtils.deserialize(Base64.getDecoder().decode(value));
+        }
+    }
+}
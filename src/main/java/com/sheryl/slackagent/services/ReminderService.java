@@ -0,0 +1,336 @@
+package com.sheryl.slackagent.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Reminders live in Redis: the payload in a hash, the due time in a sorted set and each user's IDs in a set.
+// Every instance schedules every pending reminder in an in-process timing wheel (loaded on startup, new ones
+// announced over pub/sub). When one comes due, the instances race to claim it with a script that moves it to
+// a processing set under a lease, so exactly one delivers it; a claim whose lease runs out (the node died
+// mid-delivery) is put back and delivered again.
+@Service
+public class ReminderService {
+
+    private static final String DUE_KEY = "sheryl:reminders:due";
+    private static final String PROCESSING_KEY = "sheryl:reminders:processing";
+    private static final String DATA_KEY = "sheryl:reminders:data";
+    private static final String USER_PREFIX = "sheryl:reminders:user:";
+    private static final String CHANNEL = "sheryl:reminders:new";
+
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    // Stores the reminder and announces it, unless the user is at the limit
+    private static final RedisScript<Long> CREATE = new DefaultRedisScript<>("""
+            if redis.call('SCARD', KEYS[3]) >= tonumber(ARGV[4]) then return 0 end
+            redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+            redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1])
+            redis.call('SADD', KEYS[3], ARGV[1])
+            redis.call('PUBLISH', ARGV[5], ARGV[1] .. ':' .. ARGV[3])
+            return 1
+            """, Long.class);
+
+    // Moves a due reminder from the due set to the processing set and returns its payload; nil if another
+    // instance got there first or it was cancelled
+    private static final RedisScript<String> CLAIM = new DefaultRedisScript<>("""
+            local score = redis.call('ZSCORE', KEYS[1], ARGV[1])
+            if not score or tonumber(score) > tonumber(ARGV[2]) then return false end
+            redis.call('ZREM', KEYS[1], ARGV[1])
+            redis.call('ZADD', KEYS[2], ARGV[3], ARGV[1])
+            return redis.call('HGET', KEYS[3], ARGV[1])
+            """, String.class);
+
+    private static final RedisScript<Long> COMPLETE = new DefaultRedisScript<>("""
+            redis.call('ZREM', KEYS[1], ARGV[1])
+            redis.call('HDEL', KEYS[2], ARGV[1])
+            redis.call('SREM', KEYS[3], ARGV[1])
+            return 1
+            """, Long.class);
+
+    // Pushes the lease of a claim this instance still holds further out
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>("""
+            if not redis.call('ZSCORE', KEYS[1], ARGV[1]) then return 0 end
+            redis.call('ZADD', KEYS[1], ARGV[2], ARGV[1])
+            return 1
+            """, Long.class);
+
+    // Only the owner can cancel; a reminder that is already being delivered can't be
+    private static final RedisScript<Long> CANCEL = new DefaultRedisScript<>("""
+            if redis.call('SISMEMBER', KEYS[3], ARGV[1]) == 0 then return 0 end
+            if redis.call('ZREM', KEYS[1], ARGV[1]) == 0 then return 0 end
+            redis.call('HDEL', KEYS[2], ARGV[1])
+            redis.call('SREM', KEYS[3], ARGV[1])
+            return 1
+            """, Long.class);
+
+    // Puts claims whose lease expired back into the due set, due now
+    @SuppressWarnings("rawtypes")
+    private static final RedisScript<List> REQUEUE = new DefaultRedisScript<>("""
+            local ids = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, 500)
+            for _, id in ipairs(ids) do
+                redis.call('ZREM', KEYS[1], id)
+                if redis.call('HEXISTS', KEYS[3], id) == 1 then redis.call('ZADD', KEYS[2], ARGV[1], id) end
+            end
+            return ids
+            """, List.class);
+
+    public record Reminder(String id, String userId, String text, long dueAt, long createdAt) {
+    }
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper;
+    private final WhatsAppDispatcher whatsAppDispatcher;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final MeterRegistry registry;
+
+    @Value("${sheryl.reminders.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${sheryl.reminders.wheel-size:60}")
+    private int wheelSize;
+
+    @Value("${sheryl.reminders.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${sheryl.reminders.max-per-user:500}")
+    private int maxPerUser;
+
+    // Reminder ID -> due time of everything in this instance's wheel
+    private final Map<String, Long> scheduled = new ConcurrentHashMap<>();
+
+    private final ExecutorService deliveries = Executors.newVirtualThreadPerTaskExecutor();
+
+    private volatile TimingWheel<String> wheel;
+    private volatile Thread clock;
+    private volatile boolean loaded;
+
+    public ReminderService(StringRedisTemplate redis, ObjectMapper objectMapper, WhatsAppDispatcher whatsAppDispatcher,
+                           RedisMessageListenerContainer listenerContainer, MeterRegistry registry) {
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.whatsAppDispatcher = whatsAppDispatcher;
+        this.listenerContainer = listenerContainer;
+        this.registry = registry;
+
+        Gauge.builder("sheryl.reminders.scheduled", scheduled, Map::size)
+                .description("Reminders held in this instance's timing wheel")
+                .register(registry);
+    }
+
+    // Starts once the application is up, so a context refresh alone (the CDS training run) never touches Redis
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        wheel = new TimingWheel<>(tickMs, wheelSize, System.currentTimeMillis());
+        clock = Thread.ofPlatform().name("reminder-clock").daemon().start(this::runClock);
+
+        listenerContainer.addMessageListener((message, pattern) -> {
+            String[] announced = new String(message.getBody(), StandardCharsets.UTF_8).split(":", 2);
+            if (announced.length == 2) schedule(announced[0], Long.parseLong(announced[1]));
+        }, new ChannelTopic(CHANNEL));
+
+        load();
+    }
+
+    public Optional<Reminder> create(String userId, String text, long dueAt) {
+        Reminder reminder = new Reminder(UUID.randomUUID().toString(), userId, text, dueAt, System.currentTimeMillis());
+        Long created;
+        try {
+            created = redis.execute(CREATE, List.of(DATA_KEY, DUE_KEY, USER_PREFIX + userId),
+                    reminder.id(), objectMapper.writeValueAsString(reminder), Long.toString(dueAt),
+                    Integer.toString(maxPerUser), CHANNEL);
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not save the reminder: " + e.getMessage(), e);
+        }
+        if (created == null || created == 0) return Optional.empty();
+
+        // Pub/sub reaches this instance too, but scheduling here doesn't depend on the subscription being up
+        schedule(reminder.id(), dueAt);
+        return Optional.of(reminder);
+    }
+
+    // Pending reminders of the user, soonest first
+    public List<Reminder> list(String userId) {
+        Set<String> ids = redis.opsForSet().members(USER_PREFIX + userId);
+        if (ids == null || ids.isEmpty()) return List.of();
+
+        List<Object> payloads = redis.opsForHash().multiGet(DATA_KEY, new ArrayList<>(ids));
+        List<Reminder> reminders = new ArrayList<>(payloads.size());
+        for (Object payload : payloads) {
+            Reminder reminder = parse((String) payload);
+            if (reminder != null) reminders.add(reminder);
+        }
+        reminders.sort(Comparator.comparingLong(Reminder::dueAt));
+        return reminders;
+    }
+
+    // The wheel entry is left in place; its claim finds nothing and it is dropped
+    public boolean cancel(String userId, String reminderId) {
+        Long cancelled = redis.execute(CANCEL, List.of(DUE_KEY, DATA_KEY, USER_PREFIX + userId), reminderId);
+        return cancelled != null && cancelled == 1;
+    }
+
+    // Catches what pub/sub missed and re-delivers claims abandoned by a node that went away
+    @Scheduled(fixedDelayString = "${sheryl.reminders.sweep-ms:30000}")
+    public void sweep() {
+        if (wheel == null) return;
+        try {
+            if (!loaded) {
+                load();
+                return;
+            }
+            List<?> requeued = redis.execute(REQUEUE, List.of(PROCESSING_KEY, DUE_KEY, DATA_KEY),
+                    Long.toString(System.currentTimeMillis()));
+            if (requeued != null) {
+                for (Object id : requeued) schedule(id.toString(), System.currentTimeMillis());
+            }
+
+            Set<ZSetOperations.TypedTuple<String>> overdue = redis.opsForZSet()
+                    .rangeByScoreWithScores(DUE_KEY, Double.NEGATIVE_INFINITY, System.currentTimeMillis() - tickMs);
+            if (overdue != null) {
+                for (ZSetOperations.TypedTuple<String> due : overdue) fire(due.getValue());
+            }
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Reminder sweep failed: " + e.getMessage());
+        }
+    }
+
+    // Reads every pending reminder into the wheel, page by page so a large backlog doesn't load at once
+    private void load() {
+        try {
+            long start = 0;
+            int count = 0;
+            while (true) {
+                Set<ZSetOperations.TypedTuple<String>> page = redis.opsForZSet()
+                        .rangeWithScores(DUE_KEY, start, start + LOAD_PAGE_SIZE - 1);
+                if (page == null || page.isEmpty()) break;
+                for (ZSetOperations.TypedTuple<String> due : page) {
+                    schedule(due.getValue(), due.getScore().longValue());
+                }
+                count += page.size();
+                start += LOAD_PAGE_SIZE;
+            }
+            loaded = true;
+            System.out.println("⏰ Scheduled " + count + " pending reminders");
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Could not load reminders, retrying on the next sweep: " + e.getMessage());
+        }
+    }
+
+    private void schedule(String id, long dueAt) {
+        TimingWheel<String> current = wheel;
+        if (current == null) return;
+        if (Objects.equals(scheduled.put(id, dueAt), dueAt)) return;
+        if (!current.add(id, dueAt)) fire(id);
+    }
+
+    private void runClock() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                wheel.advance(tickMs * 10, this::fire);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // Entries come out of the wheel up to a tick early, so the delivery waits for the due time before claiming
+    private void fire(String id) {
+        deliveries.submit(() -> {
+            Long dueAt = scheduled.remove(id);
+            CompletableFuture<Void> sent = null;
+            try {
+                long wait = dueAt != null ? dueAt - System.currentTimeMillis() : 0;
+                if (wait > 0) Thread.sleep(wait);
+
+                long now = System.currentTimeMillis();
+                String payload = redis.execute(CLAIM, List.of(DUE_KEY, PROCESSING_KEY, DATA_KEY),
+                        id, Long.toString(now), Long.toString(now + Duration.ofSeconds(leaseSeconds).toMillis()));
+                if (payload == null) {
+                    counter("not-claimed").increment();
+                    return;
+                }
+
+                Reminder reminder = parse(payload);
+                if (reminder != null) {
+                    // Completed only once Twilio has taken the message; otherwise the claim stays in the
+                    // processing set and the sweep retries it when the lease runs out
+                    sent = whatsAppDispatcher.sendConfirmed(reminder.userId(), "⏰ Reminder: " + reminder.text());
+                    awaitSent(id, sent);
+                }
+                redis.execute(COMPLETE, List.of(PROCESSING_KEY, DATA_KEY,
+                        USER_PREFIX + (reminder != null ? reminder.userId() : "")), id);
+                counter("delivered").increment();
+            } catch (InterruptedException e) {
+                // Withdrawn if it is still queued, so the node that picks up the claim doesn't send it twice
+                if (sent != null) sent.cancel(false);
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | RuntimeException e) {
+                // Left in the processing set; the sweep puts it back once the lease runs out
+                counter("failed").increment();
+                Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+                System.err.println("❌ Failed to deliver reminder " + id + ": " + cause.getMessage());
+            }
+        });
+    }
+
+    // A send still queued behind other messages keeps its claim: the lease is renewed while waiting, so the
+    // sweep doesn't hand the reminder to another node and have it sent twice. If the lease was lost anyway
+    // the send is withdrawn when it hasn't gone out yet, and waited for when it has.
+    private void awaitSent(String id, CompletableFuture<Void> sent) throws InterruptedException, ExecutionException {
+        long slice = Math.max(1, leaseSeconds / 2);
+        while (true) {
+            try {
+                sent.get(slice, TimeUnit.SECONDS);
+                return;
+            } catch (TimeoutException e) {
+                long leaseUntil = System.currentTimeMillis() + Duration.ofSeconds(leaseSeconds).toMillis();
+                Long renewed = redis.execute(RENEW, List.of(PROCESSING_KEY), id, Long.toString(leaseUntil));
+                if ((renewed == null || renewed == 0) && sent.cancel(false)) {
+                    throw new IllegalStateException("lease ran out before the message went out");
+                }
+                counter("slow").increment();
+            }
+        }
+    }
+
+    private Reminder parse(String payload) {
+        if (payload == null) return null;
+        try {
+            return objectMapper.readValue(payload, Reminder.class);
+        } catch (Exception e) {
+            System.err.println("⚠️ Unreadable reminder: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private Counter counter(String outcome) {
+        return Counter.builder("sheryl.reminders.fired")
+                .description("Reminders that came due on this instance")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (clock != null) clock.interrupt();
+        deliveries.close();
+    }
+}
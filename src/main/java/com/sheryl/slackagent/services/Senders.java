@@ -0,0 +1,28 @@
+package com.sheryl.slackagent.services;
+
+import org.springframework.ai.chat.model.ToolContext;
+
+public final class Senders {
+
+    public static final String TOOL_CONTEXT_KEY = "sheryl.sender";
+
+    private static final String WHATSAPP_PREFIX = "whatsapp:";
+
+    private Senders() {
+    }
+
+    // Twilio sends "whatsapp:+123..." while tools receive the bare number; both map to the same key
+    public static String normalize(String sender) {
+        if (sender == null) return "";
+        String value = sender.trim();
+        if (value.startsWith(WHATSAPP_PREFIX)) value = value.substring(WHATSAPP_PREFIX.length());
+        return value;
+    }
+
+    // The sender of the current turn owns the Google account a tool acts on; the number the model
+    // passed is only used when a tool runs outside a turn
+    public static String fromToolContext(ToolContext toolContext, String fallback) {
+        Object sender = toolContext != null ? toolContext.getContext().get(TOOL_CONTEXT_KEY) : null;
+        return sender != null ? sender.toString() : normalize(fallback);
+    }
+}
@@ -0,0 +1,58 @@
+package com.sheryl.slackagent.services;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Groups streamed tokens into WhatsApp-sized messages: the first complete sentence goes out
+// immediately, after that whole paragraphs (or long runs of sentences)
+final class StreamChunker {
+
+    private static final int SOFT_LIMIT = 1200;
+
+    private final StringBuilder buffer = new StringBuilder();
+    private boolean firstSent;
+
+    List<String> accept(String token) {
+        List<String> ready = new ArrayList<>();
+        if (token == null || token.isEmpty()) return ready;
+        buffer.append(token);
+
+        int cut;
+        while ((cut = nextCut()) > 0) {
+            String part = buffer.substring(0, cut).strip();
+            buffer.delete(0, cut);
+            if (!part.isEmpty()) {
+                ready.add(part);
+                firstSent = true;
+            }
+        }
+        return ready;
+    }
+
+    String finish() {
+        String rest = buffer.toString().strip();
+        buffer.setLength(0);
+        return rest;
+    }
+
+    private int nextCut() {
+        if (!firstSent || buffer.length() > SOFT_LIMIT) {
+            int sentenceEnd = lastSentenceEnd(Math.min(buffer.length(), WhatsAppDispatcher.MAX_BODY_LENGTH));
+            if (sentenceEnd > 0) return sentenceEnd;
+        }
+        int paragraph = buffer.indexOf("\n\n");
+        return paragraph > 0 ? paragraph + 2 : -1;
+    }
+
+    // Index just past the last ". ", "! ", "? " or newline before the limit
+    private int lastSentenceEnd(int limit) {
+        for (int i = limit - 1; i > 0; i--) {
+            char c = buffer.charAt(i);
+            char previous = buffer.charAt(i - 1);
+            if (c == '\n' || (Character.isWhitespace(c) && (previous == '.' || previous == '!' || previous == '?'))) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,137 @@
+package com.sheryl.slackagent.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+// Hierarchical timing wheel: each level has wheelSize buckets of one tick of the level below, so a
+// 1s tick and 60 buckets cover a minute, an hour, 2.5 days, 150 days... with a handful of arrays.
+// Only non-empty buckets sit in the delay queue, so an idle clock costs nothing and adding or
+// expiring an entry is O(1) however many are pending; entries cascade down a level as their bucket
+// comes due. Expiry is at tick granularity, at most one tick early.
+final class TimingWheel<T> {
+
+    private final Level root;
+    private final int wheelSize;
+    private final DelayQueue<Bucket<T>> queue = new DelayQueue<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    TimingWheel(long tickMs, int wheelSize, long startMs) {
+        this.wheelSize = wheelSize;
+        this.root = new Level(tickMs, startMs);
+    }
+
+    // Returns false when the deadline is within the current tick; the caller should act on it right away
+    boolean add(T value, long deadlineMs) {
+        lock.lock();
+        try {
+            return root.add(value, deadlineMs);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Waits up to timeoutMs for the next bucket to come due, then hands every entry that expired to onExpired.
+    // Meant to be called in a loop by a single clock thread.
+    void advance(long timeoutMs, Consumer<T> onExpired) throws InterruptedException {
+        Bucket<T> bucket = queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (bucket == null) return;
+
+        List<T> expired = new ArrayList<>();
+        lock.lock();
+        try {
+            while (bucket != null) {
+                root.advanceClock(bucket.expiration());
+                // Entries from higher levels land in a finer bucket; the rest are due
+                for (Entry<T> entry : bucket.drain()) {
+                    if (!root.add(entry.value(), entry.deadlineMs())) expired.add(entry.value());
+                }
+                bucket = queue.poll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        expired.forEach(onExpired);
+    }
+
+    private record Entry<T>(T value, long deadlineMs) {
+    }
+
+    private final class Level {
+
+        private final long levelTickMs;
+        private final long intervalMs;
+        private final List<Bucket<T>> buckets;
+        private long currentTime;
+        private Level overflow;
+
+        Level(long levelTickMs, long startMs) {
+            this.levelTickMs = levelTickMs;
+            this.intervalMs = levelTickMs * wheelSize;
+            this.buckets = new ArrayList<>(wheelSize);
+            for (int i = 0; i < wheelSize; i++) buckets.add(new Bucket<>());
+            this.currentTime = startMs - (startMs % levelTickMs);
+        }
+
+        boolean add(T value, long deadlineMs) {
+            if (deadlineMs < currentTime + levelTickMs) return false;
+            if (deadlineMs < currentTime + intervalMs) {
+                long virtualId = deadlineMs / levelTickMs;
+                Bucket<T> bucket = buckets.get((int) (virtualId % wheelSize));
+                bucket.add(new Entry<>(value, deadlineMs));
+                if (bucket.setExpiration(virtualId * levelTickMs)) queue.offer(bucket);
+                return true;
+            }
+            if (overflow == null) overflow = new Level(intervalMs, currentTime);
+            return overflow.add(value, deadlineMs);
+        }
+
+        void advanceClock(long timeMs) {
+            if (timeMs < currentTime + levelTickMs) return;
+            currentTime = timeMs - (timeMs % levelTickMs);
+            if (overflow != null) overflow.advanceClock(currentTime);
+        }
+    }
+
+    private static final class Bucket<T> implements Delayed {
+
+        private final List<Entry<T>> entries = new ArrayList<>();
+        private volatile long expiration = -1;
+
+        void add(Entry<T> entry) {
+            entries.add(entry);
+        }
+
+        // True when the bucket was reused for a new round and has to be queued again
+        boolean setExpiration(long expirationMs) {
+            if (expiration == expirationMs) return false;
+            expiration = expirationMs;
+            return true;
+        }
+
+        long expiration() {
+            return expiration;
+        }
+
+        List<Entry<T>> drain() {
+            List<Entry<T>> drained = new ArrayList<>(entries);
+            entries.clear();
+            expiration = -1;
+            return drained;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(Math.max(expiration - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(expiration, ((Bucket<?>) other).expiration);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.sheryl.slackagent.services;
+
+final class TokenBucket {
+
+    private final double ratePerSecond;
+    private final double capacity;
+
+    private double tokens;
+    private long lastRefillNanos;
+
+    TokenBucket(double ratePerSecond, double capacity) {
+        this.ratePerSecond = ratePerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    // Blocks until a token is available; meant to be called from virtual threads
+    void acquire() throws InterruptedException {
+        while (true) {
+            long waitMillis;
+            synchronized (this) {
+                refill();
+                if (tokens >= 1) {
+                    tokens -= 1;
+                    return;
+                }
+                waitMillis = (long) Math.ceil((1 - tokens) / ratePerSecond * 1000);
+            }
+            Thread.sleep(Math.max(1, waitMillis));
+        }
+    }
+
+    synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1_000_000_000.0 * ratePerSecond);
+        lastRefillNanos = now;
+    }
+}
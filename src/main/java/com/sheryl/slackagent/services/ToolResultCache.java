@@ -0,0 +1,177 @@
+package com.sheryl.slackagent.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Caches read-only tool results per user: an in-process near-cache in front of Redis.
+// Every Redis key embeds the user's generation for a group ("gmail", "calendar"); write tools bump the
+// generation, which orphans all cached reads of that group on every instance at once. A near hit doesn't
+// touch Redis: the bump is announced over pub/sub and each instance drops its near entries for the group.
+@Service
+public class ToolResultCache {
+
+    public static final String GMAIL = "gmail";
+    public static final String CALENDAR = "calendar";
+
+    private static final String KEY_PREFIX = "sheryl:cache:";
+    private static final String GENERATION_PREFIX = "sheryl:cache:gen:";
+    private static final String CHANNEL = "sheryl:cache:invalidated";
+
+    private final StringRedisTemplate redis;
+    private final ObjectMapper objectMapper;
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final RedisMessageListenerContainer listenerContainer;
+
+    @Value("${sheryl.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${sheryl.cache.default-ttl:30s}")
+    private Duration defaultTtl;
+
+    @Value("${sheryl.cache.near-size:1000}")
+    private int nearSize;
+
+    // epoch is the group's local invalidation count when the value was read; a later invalidation retires it
+    private record NearEntry(Object value, long expiresAt, long epoch) {
+    }
+
+    // "<user>:<group>" -> invalidations seen by this instance
+    private final Map<String, Long> epochs = new ConcurrentHashMap<>();
+
+    private final Map<String, NearEntry> near = Collections.synchronizedMap(
+            new LinkedHashMap<>(64, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, NearEntry> eldest) {
+                    return size() > nearSize;
+                }
+            });
+
+    public ToolResultCache(StringRedisTemplate redis, ObjectMapper objectMapper, Environment environment,
+                           MeterRegistry meterRegistry, RedisMessageListenerContainer listenerContainer) {
+        this.redis = redis;
+        this.objectMapper = objectMapper;
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.listenerContainer = listenerContainer;
+    }
+
+    // Subscribes once the application is up, like the reminder channel
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        listenerContainer.addMessageListener(
+                (message, pattern) -> retire(new String(message.getBody(), StandardCharsets.UTF_8)),
+                new ChannelTopic(CHANNEL));
+    }
+
+    // Returns the cached result for this tool call or runs the loader and caches what it returns.
+    // The TTL comes from sheryl.cache.ttl.<tool>, falling back to sheryl.cache.default-ttl.
+    @SuppressWarnings("unchecked")
+    public <T> T get(String userId, String group, String tool, List<?> args,
+                     TypeReference<T> type, Callable<T> loader) throws Exception {
+        Duration ttl = environment.getProperty("sheryl.cache.ttl." + tool, Duration.class, defaultTtl);
+        if (!enabled || ttl.isZero()) return loader.call();
+
+        String scope = userId + ":" + group;
+        String call = tool + ":" + fingerprint(args);
+        String nearKey = scope + ":" + call;
+        // Taken before the generation is read, so a value loaded across an invalidation is already retired
+        long epoch = epochs.getOrDefault(scope, 0L);
+
+        NearEntry local = near.get(nearKey);
+        if (local != null && local.epoch() == epoch && local.expiresAt() > System.currentTimeMillis()) {
+            counter(tool, "hit", "near").increment();
+            return (T) local.value();
+        }
+
+        String key;
+        try {
+            key = KEY_PREFIX + scope + ":" + generation(scope) + ":" + call;
+        } catch (RuntimeException e) {
+            System.err.println("⚠️ Tool cache unavailable, calling " + tool + " directly: " + e.getMessage());
+            return loader.call();
+        }
+
+        try {
+            String cached = redis.opsForValue().get(key);
+            if (cached != null) {
+                T value = objectMapper.readValue(cached, type);
+                Long remaining = redis.getExpire(key);
+                long nearTtl = remaining != null && remaining > 0 ? Math.min(remaining * 1000, ttl.toMillis()) : ttl.toMillis();
+                near.put(nearKey, new NearEntry(value, System.currentTimeMillis() + nearTtl, epoch));
+                counter(tool, "hit", "redis").increment();
+                return value;
+            }
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not read cached " + tool + " result: " + e.getMessage());
+        }
+
+        counter(tool, "miss", "none").increment();
+        T value = loader.call();
+        near.put(nearKey, new NearEntry(value, System.currentTimeMillis() + ttl.toMillis(), epoch));
+        try {
+            redis.opsForValue().set(key, objectMapper.writeValueAsString(value), ttl);
+        } catch (Exception e) {
+            System.err.println("⚠️ Could not cache " + tool + " result: " + e.getMessage());
+        }
+        return value;
+    }
+
+    // Called by write tools after a successful change. Retired locally right away; pub/sub reaches this
+    // instance too, which only retires the group once more.
+    public void invalidate(String userId, String group) {
+        String scope = userId + ":" + group;
+        retire(scope);
+        try {
+            redis.opsForValue().increment(GENERATION_PREFIX + scope);
+            redis.convertAndSend(CHANNEL, scope);
+        } catch (RuntimeException e) {
+            // Other instances keep serving their near entries until those expire
+            System.err.println("⚠️ Could not invalidate " + group + " cache for " + userId + ": " + e.getMessage());
+        }
+    }
+
+    private void retire(String scope) {
+        epochs.merge(scope, 1L, Long::sum);
+    }
+
+    private String generation(String scope) {
+        String generation = redis.opsForValue().get(GENERATION_PREFIX + scope);
+        return generation != null ? generation : "0";
+    }
+
+    // Arguments are trimmed and lower-cased so "Is:Unread " and "is:unread" share an entry
+    private static String fingerprint(List<?> args) {
+        StringBuilder normalized = new StringBuilder();
+        for (Object arg : args) {
+            if (arg != null) normalized.append(arg.toString().trim().toLowerCase(Locale.ROOT));
+            normalized.append('\u0001');
+        }
+        return UUID.nameUUIDFromBytes(normalized.toString().getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    private Counter counter(String tool, String result, String tier) {
+        return Counter.builder("sheryl.tool.cache.requests")
+                .description("Read-only tool calls answered from the result cache")
+                .tag("tool", tool)
+                .tag("result", result)
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+}
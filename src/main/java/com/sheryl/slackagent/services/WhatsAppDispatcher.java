@@ -0,0 +1,213 @@
+package com.sheryl.slackagent.services;
+
+import com.twilio.exception.ApiConnectionException;
+import com.twilio.exception.ApiException;
+import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.rest.api.v2010.account.MessageCreator;
+import com.twilio.type.PhoneNumber;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+public class WhatsAppDispatcher {
+
+    // Twilio rejects WhatsApp bodies longer than this
+    static final int MAX_BODY_LENGTH = 1600;
+
+    private static final int MAX_TRACKED_MESSAGES = 10_000;
+
+    // Its own queues, shut down after the inbound executor has drained
+    private final ConversationExecutor outbound;
+    private final MeterRegistry registry;
+
+    @Value("${twilio.phone.from}")
+    private String fromPhone;
+
+    @Value("${twilio.status-callback-url:}")
+    private String statusCallbackUrl;
+
+    @Value("${sheryl.whatsapp.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${sheryl.whatsapp.initial-backoff-ms:500}")
+    private long initialBackoffMillis;
+
+    @Value("${sheryl.whatsapp.per-recipient-rate:1}")
+    private double perRecipientRate;
+
+    private final TokenBucket globalBucket;
+
+    private final Map<String, TokenBucket> recipientBuckets = new ConcurrentHashMap<>();
+
+    // Twilio message SID -> last reported delivery status
+    private final Map<String, String> deliveryStatus = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_TRACKED_MESSAGES;
+                }
+            });
+
+    public WhatsAppDispatcher(MeterRegistry registry,
+                              @Value("${sheryl.whatsapp.global-rate:20}") double globalRate,
+                              @Value("${sheryl.executor.shutdown-timeout-seconds:30}") long shutdownTimeoutSeconds) {
+        this.outbound = new ConversationExecutor("outbound", registry, shutdownTimeoutSeconds);
+        this.registry = registry;
+        this.globalBucket = new TokenBucket(globalRate, globalRate);
+    }
+
+    // Queues the message and returns straight away; each recipient's messages go out in order
+    public void send(String to, String body) {
+        send(to, body, null);
+    }
+
+    public void send(String to, String body, String mediaUrl) {
+        enqueue(to, body, mediaUrl);
+    }
+
+    // Queued like send; the future completes once Twilio accepted every part and fails otherwise.
+    // Cancelling it withdraws the message if it hasn't started going out, and returns false if it has.
+    public CompletableFuture<Void> sendConfirmed(String to, String body) {
+        return enqueue(to, body, null);
+    }
+
+    // "whatsapp:+1..." and "+1..." are the same recipient, with one queue and one rate bucket
+    private CompletableFuture<Void> enqueue(String to, String body, String mediaUrl) {
+        String recipient = Senders.normalize(to);
+        List<String> parts = split(body != null ? body : "");
+        AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<Void> sent = new CompletableFuture<>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                return started.compareAndSet(false, true) && super.cancel(mayInterruptIfRunning);
+            }
+        };
+        boolean queued = outbound.submit(recipient, () -> {
+            if (!started.compareAndSet(false, true)) return;
+            try {
+                for (int i = 0; i < parts.size(); i++) {
+                    // Media goes with the first part only
+                    if (!deliver(recipient, parts.get(i), i == 0 ? mediaUrl : null)) {
+                        sent.completeExceptionally(new IllegalStateException("WhatsApp message to " + recipient + " was not delivered"));
+                        return;
+                    }
+                }
+                sent.complete(null);
+            } catch (RuntimeException e) {
+                sent.completeExceptionally(e);
+                throw e;
+            }
+        });
+        if (!queued) {
+            registry.counter("sheryl.whatsapp.rejected").increment();
+            System.err.println("❌ Dropped WhatsApp message to " + recipient + ": shutting down");
+            sent.completeExceptionally(new IllegalStateException("Not accepting WhatsApp messages, shutting down"));
+        }
+        return sent;
+    }
+
+    public void updateStatus(String messageSid, String status) {
+        deliveryStatus.put(messageSid, status);
+    }
+
+    public String status(String messageSid) {
+        return deliveryStatus.get(messageSid);
+    }
+
+    // Takes the normalized number; false when the message could not be delivered
+    private boolean deliver(String to, String body, String mediaUrl) {
+        TokenBucket recipientBucket = recipientBuckets.computeIfAbsent(to,
+                key -> new TokenBucket(perRecipientRate, Math.max(1, perRecipientRate * 3)));
+        long backoff = initialBackoffMillis;
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                recipientBucket.acquire();
+                globalBucket.acquire();
+
+                MessageCreator creator = Message.creator(
+                        new PhoneNumber("whatsapp:" + to),
+                        new PhoneNumber("whatsapp:" + fromPhone),
+                        body
+                );
+                if (mediaUrl != null) creator.setMediaUrl(mediaUrl);
+                if (!statusCallbackUrl.isBlank()) creator.setStatusCallback(URI.create(statusCallbackUrl));
+
+                Timer.Sample sample = Timer.start(registry);
+                Message message;
+                try {
+                    message = creator.create();
+                } catch (ApiException | ApiConnectionException e) {
+                    sample.stop(registry.timer("sheryl.twilio.requests", "outcome", outcome(e)));
+                    throw e;
+                }
+                sample.stop(registry.timer("sheryl.twilio.requests", "outcome", "success"));
+
+                deliveryStatus.put(message.getSid(), String.valueOf(message.getStatus()));
+                return true;
+            } catch (ApiException | ApiConnectionException e) {
+                if (!retryable(e) || attempt >= maxAttempts) {
+                    System.err.println("❌ WhatsApp message to " + to + " failed after " + attempt + " attempts: " + e.getMessage());
+                    return false;
+                }
+                sleep(backoff + (long) (Math.random() * backoff / 2));
+                backoff *= 2;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private static String outcome(RuntimeException e) {
+        if (e instanceof ApiException api && api.getStatusCode() != null) return String.valueOf(api.getStatusCode());
+        return "CONNECTION_ERROR";
+    }
+
+    private static boolean retryable(RuntimeException e) {
+        if (e instanceof ApiConnectionException) return true;
+        Integer status = ((ApiException) e).getStatusCode();
+        return status != null && (status == 429 || status >= 500);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        outbound.shutdown();
+    }
+
+    // Splits on paragraph, line, sentence or word boundaries, in that order of preference
+    static List<String> split(String body) {
+        List<String> parts = new ArrayList<>();
+        String rest = body.strip();
+        while (rest.length() > MAX_BODY_LENGTH) {
+            String window = rest.substring(0, MAX_BODY_LENGTH);
+            int cut = window.lastIndexOf("\n\n");
+            if (cut < MAX_BODY_LENGTH / 2) cut = window.lastIndexOf('\n');
+            if (cut < MAX_BODY_LENGTH / 2) cut = Math.max(window.lastIndexOf(". "), Math.max(window.lastIndexOf("! "), window.lastIndexOf("? "))) + 1;
+            if (cut < MAX_BODY_LENGTH / 2) cut = window.lastIndexOf(' ');
+            if (cut < MAX_BODY_LENGTH / 2) cut = MAX_BODY_LENGTH;
+
+            parts.add(rest.substring(0, cut).strip());
+            rest = rest.substring(cut).strip();
+        }
+        parts.add(rest);
+        return parts;
+    }
+}
@@ -1,10 +1,15 @@
 package com.sheryl.slackagent.tools;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.api.client.util.DateTime;
 import com.google.api.services.calendar.Calendar;
 import com.google.api.services.calendar.model.*;
-import com.sheryl.slackagent.services.ContextService;
+import com.sheryl.slackagent.services.CalendarEventStore;
 import com.sheryl.slackagent.services.GmailAuthService;
+import com.sheryl.slackagent.services.NotificationService;
+import com.sheryl.slackagent.services.Senders;
+import com.sheryl.slackagent.services.ToolResultCache;
+import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -16,59 +21,59 @@ import java.util.*;
 public class CalendarTools {
 
     private final GmailAuthService gmailAuthService;
-    private final ContextService sheryl;
+    private final NotificationService notifications;
+    private final CalendarEventStore eventStore;
+    private final ToolResultCache cache;
 
     @Autowired
-    public CalendarTools(GmailAuthService gmailAuthService, ContextService sheryl) {
+    public CalendarTools(GmailAuthService gmailAuthService, NotificationService notifications,
+                         CalendarEventStore eventStore, ToolResultCache cache) {
         this.gmailAuthService = gmailAuthService;
-        this.sheryl = sheryl;
+        this.notifications = notifications;
+        this.eventStore = eventStore;
+        this.cache = cache;
     }
 
-    private Calendar getService() throws Exception {
-        return gmailAuthService.getCalendarService();
+    private Calendar getService(String userId) throws Exception {
+        return gmailAuthService.getCalendarService(userId);
     }
 
-    @Tool(name = "list_calendar_events", description = "List upcoming events or meetings and Sends a text message to a user via WhatsApp")
+    @Tool(name = "list_calendar_events", description = "List upcoming events or meetings and Sends a text message to a user via WhatsApp",
+            resultConverter = CompactResultConverter.class)
     public List<Map<String, String>> listEvents(
             @ToolParam(description = "Maximum number of events to return") Integer maxResults,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
-        Calendar service = getService();
-        DateTime now = new DateTime(System.currentTimeMillis());
-        Events events = service.events().list("primary")
-                .setMaxResults(maxResults != null ? maxResults : 10)
-                .setTimeMin(now)
-                .setOrderBy("startTime")
-                .setSingleEvents(true)
-                .execute();
-
-        List<Map<String, String>> result = new ArrayList<>();
-        for (Event event : events.getItems()) {
-            Map<String, String> e = new HashMap<>();
-            e.put("id", event.getId());
-            e.put("summary", event.getSummary());
-            e.put("start", event.getStart().getDateTime() != null ?
-                    event.getStart().getDateTime().toStringRfc3339() :
-                    event.getStart().getDate().toString());
-            e.put("end", event.getEnd().getDateTime() != null ?
-                    event.getEnd().getDateTime().toStringRfc3339() :
-                    event.getEnd().getDate().toString());
-            result.add(e);
-        }
-
-        sheryl.invoke(notifyNumber, "Listed " + result.size() + " upcoming events. Results are: " + result);
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        int limit = maxResults != null ? maxResults : 10;
+
+        List<Map<String, String>> result = cache.get(userId, ToolResultCache.CALENDAR, "list_calendar_events", List.of(limit),
+                new TypeReference<>() {}, () -> {
+                    eventStore.sync(userId);
+                    List<Map<String, String>> events = new ArrayList<>();
+                    for (Event event : eventStore.upcoming(userId, System.currentTimeMillis(), limit)) {
+                        events.add(toMap(event, false));
+                    }
+                    return events;
+                });
+
+        notifications.notify(toolContext, notifyNumber, "Listed " + result.size() + " upcoming events. Results are:\n" + ToolResults.encode(result));
         return result;
     }
 
-    @Tool(name = "create_calendar_event", description = "Create a new calendar event and Sends a text message to a user via WhatsApp")
+    @Tool(name = "create_calendar_event", description = "Create a new calendar event and Sends a text message to a user via WhatsApp",
+            resultConverter = CompactResultConverter.class)
     public Map<String, String> createEvent(
             @ToolParam(description = "Event title") String summary,
             @ToolParam(description = "Event description") String description,
             @ToolParam(description = "Start time in RFC3339 format") String startDateTime,
             @ToolParam(description = "End time in RFC3339 format") String endDateTime,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
-        Calendar service = getService();
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        Calendar service = getService(userId);
 
         Event event = new Event()
                 .setSummary(summary)
@@ -77,9 +82,11 @@ public class CalendarTools {
                 .setEnd(new EventDateTime().setDateTime(new DateTime(endDateTime)));
 
         Event createdEvent = service.events().insert("primary", event).execute();
+        eventStore.put(userId, createdEvent);
+        cache.invalidate(userId, ToolResultCache.CALENDAR);
         String link = createdEvent.getHtmlLink();
 
-        sheryl.invoke(notifyNumber, "Created new event: " + summary + " — " + link);
+        notifications.notify(toolContext, notifyNumber, "Created new event: " + summary + " — " + link);
 
         Map<String, String> result = new HashMap<>();
         result.put("id", createdEvent.getId());
@@ -88,35 +95,45 @@ public class CalendarTools {
         return result;
     }
 
-    @Tool(name = "delete_calendar_event", description = "Delete an event by ID and Sends a text message to a user via WhatsApp")
+    @Tool(name = "delete_calendar_event", description = "Delete an event by ID and Sends a text message to a user via WhatsApp",
+            resultConverter = CompactResultConverter.class)
     public String deleteEvent(
             @ToolParam(description = "Event ID to delete") String eventId,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
-        Calendar service = getService();
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        Calendar service = getService(userId);
         service.events().delete("primary", eventId).execute();
+        eventStore.remove(userId, eventId);
+        cache.invalidate(userId, ToolResultCache.CALENDAR);
 
         String msg = "Deleted calendar event with ID: " + eventId;
-        sheryl.invoke(notifyNumber, msg);
+        notifications.notify(toolContext, notifyNumber, msg);
         return msg;
     }
 
-    @Tool(name = "update_calendar_event", description = "Update an existing event and Sends a text message to a user via WhatsApp")
+    @Tool(name = "update_calendar_event", description = "Update an existing event and Sends a text message to a user via WhatsApp",
+            resultConverter = CompactResultConverter.class)
     public Map<String, String> updateEvent(
             @ToolParam(description = "Event ID") String eventId,
             @ToolParam(description = "New event summary") String summary,
             @ToolParam(description = "New event description") String description,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
-        Calendar service = getService();
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        Calendar service = getService(userId);
         Event event = service.events().get("primary", eventId).execute();
 
         if (summary != null) event.setSummary(summary);
         if (description != null) event.setDescription(description);
 
         Event updated = service.events().update("primary", eventId, event).execute();
+        eventStore.put(userId, updated);
+        cache.invalidate(userId, ToolResultCache.CALENDAR);
 
-        sheryl.invoke(notifyNumber, "Calendar event updated: " + updated.getSummary() + "\n" + updated.getHtmlLink());
+        notifications.notify(toolContext, notifyNumber, "Calendar event updated: " + updated.getSummary() + "\n" + updated.getHtmlLink());
 
         Map<String, String> result = new HashMap<>();
         result.put("id", updated.getId());
@@ -125,47 +142,45 @@ public class CalendarTools {
         return result;
     }
 
-    @Tool(name = "search_calendar_events_advanced", description = "Search events by keyword or attendee and Sends a text message to a user via WhatsApp")
+    @Tool(name = "search_calendar_events_advanced", description = "Search events by keyword or attendee and Sends a text message to a user via WhatsApp",
+            resultConverter = CompactResultConverter.class)
     public List<Map<String, String>> searchEventsAdvanced(
             @ToolParam(description = "Keyword to search in title or description") String keyword,
             @ToolParam(description = "Attendee email (optional)") String attendeeEmail,
             @ToolParam(description = "Maximum number of results") Integer maxResults,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
-        Calendar service = gmailAuthService.getCalendarService();
-        Calendar.Events.List request = service.events().list("primary")
-                .setMaxResults(maxResults != null ? maxResults : 20)
-                .setOrderBy("startTime")
-                .setSingleEvents(true);
-
-        Events events = request.execute();
-        List<Map<String, String>> results = new ArrayList<>();
-
-        for (Event event : events.getItems()) {
-            boolean matchesKeyword = keyword == null || keyword.isBlank() ||
-                    (event.getSummary() != null && event.getSummary().toLowerCase().contains(keyword.toLowerCase())) ||
-                    (event.getDescription() != null && event.getDescription().toLowerCase().contains(keyword.toLowerCase()));
-
-            boolean matchesAttendee = attendeeEmail == null || attendeeEmail.isBlank() ||
-                    (event.getAttendees() != null && event.getAttendees().stream()
-                            .anyMatch(a -> attendeeEmail.equalsIgnoreCase(a.getEmail())));
-
-            if (matchesKeyword && matchesAttendee) {
-                Map<String, String> e = new HashMap<>();
-                e.put("id", event.getId());
-                e.put("summary", event.getSummary());
-                e.put("description", event.getDescription() != null ? event.getDescription() : "");
-                e.put("start", event.getStart().getDateTime() != null ?
-                        event.getStart().getDateTime().toStringRfc3339() :
-                        event.getStart().getDate().toString());
-                e.put("end", event.getEnd().getDateTime() != null ?
-                        event.getEnd().getDateTime().toStringRfc3339() :
-                        event.getEnd().getDate().toString());
-                results.add(e);
-            }
-        }
-
-        sheryl.invoke(notifyNumber, "Searched for events with keyword '" + keyword + "' and found " + results.size() + " matches. Results are: " + results);
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        int limit = maxResults != null ? maxResults : 20;
+
+        List<Map<String, String>> results = cache.get(userId, ToolResultCache.CALENDAR, "search_calendar_events_advanced",
+                Arrays.asList(keyword, attendeeEmail, limit), new TypeReference<>() {}, () -> {
+                    eventStore.sync(userId);
+                    List<Map<String, String>> events = new ArrayList<>();
+                    for (Event event : eventStore.search(userId, keyword, attendeeEmail, limit)) {
+                        events.add(toMap(event, true));
+                    }
+                    return events;
+                });
+
+        notifications.notify(toolContext, notifyNumber, "Searched for events with keyword '" + keyword + "' and found " + results.size() + " matches. Results are:\n" + ToolResults.encode(results));
         return results;
     }
+
+    static Map<String, String> toMap(Event event, boolean withDescription) {
+        Map<String, String> e = new HashMap<>();
+        e.put("id", event.getId());
+        e.put("summary", event.getSummary());
+        if (withDescription) {
+            e.put("description", event.getDescription() != null ? event.getDescription() : "");
+        }
+        e.put("start", event.getStart().getDateTime() != null ?
+                event.getStart().getDateTime().toStringRfc3339() :
+                event.getStart().getDate().toString());
+        e.put("end", event.getEnd().getDateTime() != null ?
+                event.getEnd().getDateTime().toStringRfc3339() :
+                event.getEnd().getDate().toString());
+        return e;
+    }
 }
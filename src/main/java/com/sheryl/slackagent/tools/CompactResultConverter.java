@@ -0,0 +1,14 @@
+package com.sheryl.slackagent.tools;
+
+import org.springframework.ai.tool.execution.ToolCallResultConverter;
+
+import java.lang.reflect.Type;
+
+// Used via @Tool(resultConverter = ...) instead of the default JSON serialization
+public class CompactResultConverter implements ToolCallResultConverter {
+
+    @Override
+    public String convert(Object result, Type returnType) {
+        return ToolResults.encode(result);
+    }
+}
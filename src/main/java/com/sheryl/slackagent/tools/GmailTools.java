@@ -1,9 +1,14 @@
 package com.sheryl.slackagent.tools;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.api.services.gmail.Gmail;
 import com.google.api.services.gmail.model.*;
-import com.sheryl.slackagent.services.ContextService;
 import com.sheryl.slackagent.services.GmailAuthService;
+import com.sheryl.slackagent.services.MailboxIndex;
+import com.sheryl.slackagent.services.NotificationService;
+import com.sheryl.slackagent.services.Senders;
+import com.sheryl.slackagent.services.ToolResultCache;
+import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.tool.annotation.*;
 import org.springframework.stereotype.Component;
 
@@ -17,204 +22,433 @@ import java.util.*;
 @Component
 public class GmailTools {
 
+    private static final int DEFAULT_MAX_RESULTS = 10;
+
+    // Gmail recommends keeping batch requests at or below 50 calls
+    private static final long PAGE_SIZE = 50L;
+
+    // users.messages.batchModify and batchDelete accept at most 1000 IDs per call
+    private static final int BULK_CHUNK_SIZE = 1000;
+
+    // users.messages.list returns at most 500 IDs per page
+    private static final long ID_PAGE_SIZE = 500L;
+
+    private static final int DEFAULT_MAX_MATCHES = 500;
+    private static final int MAX_MATCHES = 5000;
+
     private final GmailAuthService gmailAuthService;
-    private final ContextService sheryl;
+    private final NotificationService notifications;
+    private final MailboxIndex mailboxIndex;
+    private final ToolResultCache cache;
 
-    public GmailTools(GmailAuthService gmailAuthService, ContextService sheryl) {
+    public GmailTools(GmailAuthService gmailAuthService, NotificationService notifications,
+                      MailboxIndex mailboxIndex, ToolResultCache cache) {
         this.gmailAuthService = gmailAuthService;
-        this.sheryl = sheryl;
+        this.notifications = notifications;
+        this.mailboxIndex = mailboxIndex;
+        this.cache = cache;
     }
 
 
     @Tool(
             name = "list_gmail_messages",
-            description = "List Gmail messages matching a search query (e.g., 'is:unread', 'from:example@gmail.com', 'subject:meeting'). Sends results to user via WhatsApp."
+            description = "List Gmail messages matching a search query (e.g., 'is:unread', 'from:example@gmail.com', 'subject:meeting'). Sends results to user via WhatsApp.",
+            resultConverter = CompactResultConverter.class
     )
     public List<Map<String, Object>> listMessages(
             @ToolParam(description = "Gmail search query (example: 'is:unread' or 'from:boss@gmail.com')") String query,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "Maximum number of messages to return (default 10)", required = false) Integer maxResults,
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
-
-        Gmail service = gmailAuthService.getGmailService();
-        if (query == null || query.isBlank()) query = "is:unread";
-
-        ListMessagesResponse response = service.users().messages()
-                .list("me")
-                .setQ(query)
-                .setMaxResults(10L)
-                .execute();
-
-        List<Message> messages = response.getMessages();
-        List<Map<String, Object>> result = new ArrayList<>();
-
-        if (messages == null || messages.isEmpty()) {
-            String msg = "No messages found for query: " + query;
-            sheryl.invoke(notifyNumber, msg);
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+
+        String gmailQuery = query == null || query.isBlank() ? "is:unread" : query;
+        int limit = maxResults != null && maxResults > 0 ? maxResults : DEFAULT_MAX_RESULTS;
+
+        List<Map<String, Object>> result = cache.get(userId, ToolResultCache.GMAIL, "list_gmail_messages", List.of(gmailQuery, limit),
+                new TypeReference<>() {}, () -> {
+                    // Common searches are answered from the local index; anything else goes to Gmail
+                    Optional<List<MailboxIndex.IndexedMessage>> indexed = mailboxIndex.query(userId, gmailQuery, limit);
+                    List<MailboxIndex.IndexedMessage> found = indexed.isPresent() ? indexed.get() : search(userId, gmailQuery, limit);
+
+                    List<Map<String, Object>> messages = new ArrayList<>(found.size());
+                    for (MailboxIndex.IndexedMessage message : found) {
+                        messages.add(Map.of(
+                                "id", message.id(),
+                                "from", message.from(),
+                                "subject", message.subject(),
+                                "snippet", message.snippet()
+                        ));
+                    }
+                    return messages;
+                });
+
+        if (result.isEmpty()) {
+            String msg = "No messages found for query: " + gmailQuery;
+            notifications.notify(toolContext, notifyNumber, msg);
             return List.of(Map.of("message", msg));
         }
 
-        for (Message msg : messages) {
-            Message full = service.users().messages().get("me", msg.getId()).setFormat("full").execute();
-
-            String from = header(full, "From");
-            String subject = header(full, "Subject");
-
-            result.add(Map.of(
-                    "id", full.getId(),
-                    "from", from,
-                    "subject", subject,
-                    "snippet", full.getSnippet()
-            ));
-        }
-
-        sheryl.invoke(notifyNumber, "📩 Found " + result.size() + " messages for query: '" + query + "'. Results: " + result);
+        notifications.notify(toolContext, notifyNumber, "📩 Found " + result.size() + " messages for query: '" + gmailQuery + "'. Results:\n" + ToolResults.encode(result));
         return result;
     }
 
 
     @Tool(
             name = "send_gmail_message",
-            description = "Send an email to someone using Gmail and notify via WhatsApp."
+            description = "Send an email to someone using Gmail and notify via WhatsApp.",
+            resultConverter = CompactResultConverter.class
     )
     public String sendEmail(
             @ToolParam(description = "Recipient email address") String to,
             @ToolParam(description = "Email subject") String subject,
             @ToolParam(description = "Email body text") String body,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
 
-        Gmail service = gmailAuthService.getGmailService();
-
-        Properties props = new Properties();
-        Session session = Session.getDefaultInstance(props, null);
-        MimeMessage email = new MimeMessage(session);
-
-        email.setFrom(new InternetAddress("me"));
-        email.addRecipient(jakarta.mail.Message.RecipientType.TO, new InternetAddress(to));
-        email.setSubject(subject);
-        email.setText(body);
-
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        email.writeTo(buffer);
-
-        String encodedEmail = Base64.getUrlEncoder()
-                .withoutPadding()
-                .encodeToString(buffer.toByteArray());
+        Gmail service = gmailAuthService.getGmailService(userId);
 
         Message gmailMessage = new Message();
-        gmailMessage.setRaw(encodedEmail);
+        gmailMessage.setRaw(rawMessage(to, subject, body, null));
 
         service.users().messages().send("me", gmailMessage).execute();
+        cache.invalidate(userId, ToolResultCache.GMAIL);
 
         String result = "✅ Email sent to " + to + " with subject: " + subject;
-        sheryl.invoke(notifyNumber, result);
+        notifications.notify(toolContext, notifyNumber, result);
         return result;
     }
 
 
     @Tool(
             name = "reply_gmail_message",
-            description = "Reply to an existing email using its message ID and notify via WhatsApp."
+            description = "Reply to an existing email using its message ID and notify via WhatsApp.",
+            resultConverter = CompactResultConverter.class
     )
     public String replyToEmail(
             @ToolParam(description = "Message ID to reply to") String messageId,
             @ToolParam(description = "Reply body text") String body,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
 
-        Gmail service = gmailAuthService.getGmailService();
+        Gmail service = gmailAuthService.getGmailService(userId);
 
         Message original = service.users().messages().get("me", messageId).setFormat("full").execute();
         String subject = header(original, "Subject");
         String from = header(original, "From");
 
-        Properties props = new Properties();
-        Session session = Session.getDefaultInstance(props, null);
-        MimeMessage email = new MimeMessage(session);
-
-        email.setFrom(new InternetAddress("me"));
-        email.addRecipient(jakarta.mail.Message.RecipientType.TO, new InternetAddress(from));
-        email.setSubject("Re: " + subject);
-        email.setText(body);
-        email.setHeader("In-Reply-To", original.getId());
-        email.setHeader("References", original.getId());
-
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
-        email.writeTo(buffer);
-        String encodedEmail = Base64.getUrlEncoder()
-                .withoutPadding()
-                .encodeToString(buffer.toByteArray());
-
         Message replyMessage = new Message();
-        replyMessage.setRaw(encodedEmail);
+        replyMessage.setRaw(rawMessage(from, "Re: " + subject, body, original.getId()));
         replyMessage.setThreadId(original.getThreadId());
 
         service.users().messages().send("me", replyMessage).execute();
+        cache.invalidate(userId, ToolResultCache.GMAIL);
 
         String result = "↩️ Replied to message with subject: " + subject;
-        sheryl.invoke(notifyNumber, result);
+        notifications.notify(toolContext, notifyNumber, result);
         return result;
     }
 
 
     @Tool(
             name = "flag_gmail_message",
-            description = "Flag a Gmail message (star it) when it requires user attention and notify via WhatsApp."
+            description = "Flag a Gmail message (star it) when it requires user attention and notify via WhatsApp.",
+            resultConverter = CompactResultConverter.class
     )
     public String flagMessage(
             @ToolParam(description = "Message ID to flag") String messageId,
             @ToolParam(description = "Reason for flagging") String reason,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
 
-        Gmail service = gmailAuthService.getGmailService();
+        Gmail service = gmailAuthService.getGmailService(userId);
         ModifyMessageRequest mods = new ModifyMessageRequest().setAddLabelIds(List.of("STARRED"));
         service.users().messages().modify("me", messageId, mods).execute();
+        mailboxIndex.addLabels(userId, messageId, mods.getAddLabelIds());
+        cache.invalidate(userId, ToolResultCache.GMAIL);
 
         String result = "🚩 Message " + messageId + " flagged. Reason: " + reason;
-        sheryl.invoke(notifyNumber, result);
+        notifications.notify(toolContext, notifyNumber, result);
         return result;
     }
 
 
     @Tool(
             name = "delete_gmail_message",
-            description = "Delete a Gmail message permanently and notify via WhatsApp."
+            description = "Delete a Gmail message permanently and notify via WhatsApp.",
+            resultConverter = CompactResultConverter.class
     )
     public String deleteMessage(
             @ToolParam(description = "Message ID to delete") String messageId,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
 
-        Gmail service = gmailAuthService.getGmailService();
+        Gmail service = gmailAuthService.getGmailService(userId);
         service.users().messages().delete("me", messageId).execute();
+        mailboxIndex.remove(userId, messageId);
+        cache.invalidate(userId, ToolResultCache.GMAIL);
 
         String result = "🗑️ Message " + messageId + " deleted successfully.";
-        sheryl.invoke(notifyNumber, result);
+        notifications.notify(toolContext, notifyNumber, result);
         return result;
     }
 
 
     @Tool(
             name = "mark_gmail_as_read",
-            description = "Mark a Gmail message as read and notify via WhatsApp."
+            description = "Mark a Gmail message as read and notify via WhatsApp.",
+            resultConverter = CompactResultConverter.class
     )
     public String markAsRead(
             @ToolParam(description = "Message ID to mark as read") String messageId,
-            @ToolParam(description = "The WhatsApp user's number") String notifyNumber
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
     ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
 
-        Gmail service = gmailAuthService.getGmailService();
+        Gmail service = gmailAuthService.getGmailService(userId);
         ModifyMessageRequest mods = new ModifyMessageRequest().setRemoveLabelIds(List.of("UNREAD"));
         service.users().messages().modify("me", messageId, mods).execute();
+        mailboxIndex.removeLabels(userId, messageId, mods.getRemoveLabelIds());
+        cache.invalidate(userId, ToolResultCache.GMAIL);
 
         String result = "✅ Message " + messageId + " marked as read.";
-        sheryl.invoke(notifyNumber, result);
+        notifications.notify(toolContext, notifyNumber, result);
         return result;
     }
 
 
-    private String header(Message msg, String name) {
+    @Tool(
+            name = "flag_gmail_messages",
+            description = "Flag (star) several Gmail messages at once and notify via WhatsApp. Prefer this over flag_gmail_message for more than one message.",
+            resultConverter = CompactResultConverter.class
+    )
+    public String flagMessages(
+            @ToolParam(description = "IDs of the messages to flag") List<String> messageIds,
+            @ToolParam(description = "Reason for flagging") String reason,
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
+    ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        List<String> ids = distinct(messageIds);
+
+        modify(userId, ids, List.of("STARRED"), List.of());
+
+        String result = "🚩 " + ids.size() + " message" + (ids.size() == 1 ? "" : "s") + " flagged. Reason: " + reason;
+        notifications.notify(toolContext, notifyNumber, result);
+        return result;
+    }
+
+
+    @Tool(
+            name = "mark_gmail_messages_as_read",
+            description = "Mark several Gmail messages as read at once and notify via WhatsApp. Prefer this over mark_gmail_as_read for more than one message.",
+            resultConverter = CompactResultConverter.class
+    )
+    public String markMessagesAsRead(
+            @ToolParam(description = "IDs of the messages to mark as read") List<String> messageIds,
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
+    ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        List<String> ids = distinct(messageIds);
+
+        modify(userId, ids, List.of(), List.of("UNREAD"));
+
+        String result = "✅ " + ids.size() + " message" + (ids.size() == 1 ? "" : "s") + " marked as read.";
+        notifications.notify(toolContext, notifyNumber, result);
+        return result;
+    }
+
+
+    @Tool(
+            name = "delete_gmail_messages",
+            description = "Delete several Gmail messages permanently at once and notify via WhatsApp. Prefer this over delete_gmail_message for more than one message.",
+            resultConverter = CompactResultConverter.class
+    )
+    public String deleteMessages(
+            @ToolParam(description = "IDs of the messages to delete") List<String> messageIds,
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
+    ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        List<String> ids = distinct(messageIds);
+
+        Gmail service = gmailAuthService.getGmailService(userId);
+        for (List<String> chunk : chunks(ids)) {
+            service.users().messages().batchDelete("me", new BatchDeleteMessagesRequest().setIds(chunk)).execute();
+            for (String id : chunk) mailboxIndex.remove(userId, id);
+        }
+        cache.invalidate(userId, ToolResultCache.GMAIL);
+
+        String result = "🗑️ " + ids.size() + " message" + (ids.size() == 1 ? "" : "s") + " deleted successfully.";
+        notifications.notify(toolContext, notifyNumber, result);
+        return result;
+    }
+
+
+    @Tool(
+            name = "modify_gmail_messages_matching",
+            description = "Add and/or remove labels on every Gmail message matching a search query (e.g., mark all 'from:newsletter@example.com is:unread' as read by removing UNREAD) and notify via WhatsApp. "
+                    + "Use system label IDs such as UNREAD, STARRED, IMPORTANT, INBOX (remove INBOX to archive) or TRASH.",
+            resultConverter = CompactResultConverter.class
+    )
+    public String modifyMessagesMatching(
+            @ToolParam(description = "Gmail search query selecting the messages (example: 'category:promotions older_than:30d')") String query,
+            @ToolParam(description = "Label IDs to add", required = false) List<String> addLabelIds,
+            @ToolParam(description = "Label IDs to remove", required = false) List<String> removeLabelIds,
+            @ToolParam(description = "Maximum number of messages to change (default 500, at most 5000)", required = false) Integer maxMessages,
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
+    ) throws Exception {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+        List<String> add = addLabelIds != null ? addLabelIds : List.of();
+        List<String> remove = removeLabelIds != null ? removeLabelIds : List.of();
+        if (query == null || query.isBlank() || (add.isEmpty() && remove.isEmpty())) {
+            return "A search query and at least one label to add or remove are required.";
+        }
+        int limit = maxMessages != null && maxMessages > 0 ? Math.min(maxMessages, MAX_MATCHES) : DEFAULT_MAX_MATCHES;
+
+        List<String> ids = matchingIds(userId, query, limit);
+        if (ids.isEmpty()) {
+            String msg = "No messages found for query: " + query;
+            notifications.notify(toolContext, notifyNumber, msg);
+            return msg;
+        }
+
+        modify(userId, ids, add, remove);
+
+        StringBuilder result = new StringBuilder("🏷️ Updated " + ids.size() + (ids.size() == limit ? "+" : "")
+                + " message" + (ids.size() == 1 ? "" : "s") + " matching '" + query + "'");
+        if (!add.isEmpty()) result.append(", added ").append(String.join(", ", add));
+        if (!remove.isEmpty()) result.append(", removed ").append(String.join(", ", remove));
+        result.append('.');
+        notifications.notify(toolContext, notifyNumber, result.toString());
+        return result.toString();
+    }
+
+
+    // Applies one label change to all IDs in as few batchModify calls as the API allows
+    private void modify(String userId, List<String> ids, List<String> add, List<String> remove) throws Exception {
+        Gmail service = gmailAuthService.getGmailService(userId);
+        for (List<String> chunk : chunks(ids)) {
+            BatchModifyMessagesRequest request = new BatchModifyMessagesRequest().setIds(chunk);
+            if (!add.isEmpty()) request.setAddLabelIds(add);
+            if (!remove.isEmpty()) request.setRemoveLabelIds(remove);
+            service.users().messages().batchModify("me", request).execute();
+
+            for (String id : chunk) {
+                if (!add.isEmpty()) mailboxIndex.addLabels(userId, id, add);
+                if (!remove.isEmpty()) mailboxIndex.removeLabels(userId, id, remove);
+            }
+        }
+        cache.invalidate(userId, ToolResultCache.GMAIL);
+    }
+
+
+    // Only the IDs are needed for a bulk change, so pages are as large as the API allows
+    private List<String> matchingIds(String userId, String query, int limit) throws Exception {
+        Gmail service = gmailAuthService.getGmailService(userId);
+        List<String> ids = new ArrayList<>();
+        String pageToken = null;
+
+        do {
+            ListMessagesResponse response = service.users().messages()
+                    .list("me")
+                    .setQ(query)
+                    .setMaxResults(Math.min(ID_PAGE_SIZE, limit - ids.size()))
+                    .setPageToken(pageToken)
+                    .setFields("messages/id,nextPageToken")
+                    .execute();
+
+            List<Message> page = response.getMessages();
+            if (page == null || page.isEmpty()) break;
+
+            for (Message message : page) ids.add(message.getId());
+            pageToken = response.getNextPageToken();
+        } while (pageToken != null && ids.size() < limit);
+
+        return ids;
+    }
+
+
+    private static List<String> distinct(List<String> messageIds) {
+        if (messageIds == null || messageIds.isEmpty()) throw new IllegalArgumentException("At least one message ID is required");
+        return List.copyOf(new LinkedHashSet<>(messageIds));
+    }
+
+
+    private static List<List<String>> chunks(List<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i += BULK_CHUNK_SIZE) {
+            chunks.add(ids.subList(i, Math.min(ids.size(), i + BULK_CHUNK_SIZE)));
+        }
+        return chunks;
+    }
+
+
+    // Queries Gmail directly for searches the mailbox index can't answer
+    private List<MailboxIndex.IndexedMessage> search(String userId, String query, int limit) throws Exception {
+        Gmail service = gmailAuthService.getGmailService(userId);
+        List<MailboxIndex.IndexedMessage> found = new ArrayList<>();
+        String pageToken = null;
+
+        // Page through the listing; each page's headers are fetched in a single batch call
+        do {
+            ListMessagesResponse response = service.users().messages()
+                    .list("me")
+                    .setQ(query)
+                    .setMaxResults(Math.min(PAGE_SIZE, limit - found.size()))
+                    .setPageToken(pageToken)
+                    .setFields("messages/id,nextPageToken")
+                    .execute();
+
+            List<Message> page = response.getMessages();
+            if (page == null || page.isEmpty()) break;
+
+            List<MailboxIndex.IndexedMessage> fetched = mailboxIndex.fetch(service, page.stream().map(Message::getId).toList());
+            mailboxIndex.putAll(userId, fetched);
+            found.addAll(fetched);
+            pageToken = response.getNextPageToken();
+        } while (pageToken != null && found.size() < limit);
+
+        return found;
+    }
+
+
+    // RFC 822 message, base64url-encoded as Gmail's "raw" field expects
+    static String rawMessage(String to, String subject, String body, String inReplyTo) throws Exception {
+        Session session = Session.getDefaultInstance(new Properties(), null);
+        MimeMessage email = new MimeMessage(session);
+
+        email.setFrom(new InternetAddress("me"));
+        email.addRecipient(jakarta.mail.Message.RecipientType.TO, new InternetAddress(to));
+        email.setSubject(subject);
+        email.setText(body);
+        if (inReplyTo != null) {
+            email.setHeader("In-Reply-To", inReplyTo);
+            email.setHeader("References", inReplyTo);
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        email.writeTo(buffer);
+        return Base64.getUrlEncoder()
+                .withoutPadding()
+                .encodeToString(buffer.toByteArray());
+    }
+
+
+    static String header(Message msg, String name) {
+        if (msg.getPayload() == null || msg.getPayload().getHeaders() == null) return "Unknown";
         return msg.getPayload().getHeaders().stream()
                 .filter(h -> h.getName().equalsIgnoreCase(name))
                 .findFirst()
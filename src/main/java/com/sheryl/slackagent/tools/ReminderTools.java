@@ -0,0 +1,131 @@
+package com.sheryl.slackagent.tools;
+
+import com.sheryl.slackagent.services.CalendarEventStore;
+import com.sheryl.slackagent.services.NotificationService;
+import com.sheryl.slackagent.services.ReminderService;
+import com.sheryl.slackagent.services.Senders;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.annotation.Tool;
+import org.springframework.ai.tool.annotation.ToolParam;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+@Component
+public class ReminderTools {
+
+    private static final Duration MAX_AHEAD = Duration.ofDays(366);
+
+    private final ReminderService reminderService;
+    private final NotificationService notifications;
+    private final CalendarEventStore calendarEventStore;
+
+    public ReminderTools(ReminderService reminderService, NotificationService notifications,
+                         CalendarEventStore calendarEventStore) {
+        this.reminderService = reminderService;
+        this.notifications = notifications;
+        this.calendarEventStore = calendarEventStore;
+    }
+
+    @Tool(
+            name = "set_reminder",
+            description = "Schedule a reminder that is sent to the user on WhatsApp at the given time and notify via WhatsApp. "
+                    + "Give either the exact time or the number of minutes from now.",
+            resultConverter = CompactResultConverter.class
+    )
+    public String setReminder(
+            @ToolParam(description = "What to remind the user about") String text,
+            @ToolParam(description = "When to send it, ISO-8601 with offset (example: 2025-10-16T09:00:00+02:00)", required = false) String remindAt,
+            @ToolParam(description = "Minutes from now, instead of remindAt", required = false) Integer inMinutes,
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
+    ) {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+
+        Instant dueAt;
+        try {
+            if (remindAt != null && !remindAt.isBlank()) {
+                dueAt = OffsetDateTime.parse(remindAt.trim()).toInstant();
+            } else if (inMinutes != null && inMinutes > 0) {
+                dueAt = Instant.now().plus(Duration.ofMinutes(inMinutes));
+            } else {
+                return "Either remindAt or inMinutes is required.";
+            }
+        } catch (DateTimeParseException e) {
+            return "Invalid remindAt '" + remindAt + "', expected ISO-8601 with offset like 2025-10-16T09:00:00+02:00.";
+        }
+        if (dueAt.isBefore(Instant.now())) return "That time has already passed.";
+        if (dueAt.isAfter(Instant.now().plus(MAX_AHEAD))) return "Reminders can be set at most a year ahead.";
+
+        Optional<ReminderService.Reminder> reminder = reminderService.create(userId, text, dueAt.toEpochMilli());
+        if (reminder.isEmpty()) return "You have too many pending reminders; cancel some first.";
+
+        String result = "⏰ Reminder set for " + format(reminder.get().dueAt(), calendarEventStore.zone(userId)) + ": " + text + " (id " + reminder.get().id() + ")";
+        notifications.notify(toolContext, notifyNumber, result);
+        return result;
+    }
+
+
+    @Tool(
+            name = "list_reminders",
+            description = "List the user's pending reminders, soonest first, and notify via WhatsApp.",
+            resultConverter = CompactResultConverter.class
+    )
+    public List<Map<String, String>> listReminders(
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
+    ) {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+
+        List<ReminderService.Reminder> pending = reminderService.list(userId);
+        ZoneId zone = pending.isEmpty() ? null : calendarEventStore.zone(userId);
+        List<Map<String, String>> reminders = new ArrayList<>();
+        for (ReminderService.Reminder reminder : pending) {
+            reminders.add(Map.of(
+                    "id", reminder.id(),
+                    "text", reminder.text(),
+                    "remindAt", format(reminder.dueAt(), zone)
+            ));
+        }
+
+        if (reminders.isEmpty()) {
+            String msg = "No pending reminders.";
+            notifications.notify(toolContext, notifyNumber, msg);
+            return List.of(Map.of("message", msg));
+        }
+
+        notifications.notify(toolContext, notifyNumber, "⏰ " + reminders.size() + " pending reminders:\n" + ToolResults.encode(reminders));
+        return reminders;
+    }
+
+
+    @Tool(
+            name = "cancel_reminder",
+            description = "Cancel a pending reminder by its ID and notify via WhatsApp.",
+            resultConverter = CompactResultConverter.class
+    )
+    public String cancelReminder(
+            @ToolParam(description = "ID of the reminder to cancel") String reminderId,
+            @ToolParam(description = "The WhatsApp user's number") String notifyNumber,
+            ToolContext toolContext
+    ) {
+        String userId = Senders.fromToolContext(toolContext, notifyNumber);
+
+        String result = reminderService.cancel(userId, reminderId)
+                ? "🗑️ Reminder " + reminderId + " cancelled."
+                : "No pending reminder with ID " + reminderId + ".";
+        notifications.notify(toolContext, notifyNumber, result);
+        return result;
+    }
+
+
+    // In the user's calendar time zone, so the offset matches the times they gave
+    private static String format(long epochMillis, ZoneId zone) {
+        return Instant.ofEpochMilli(epochMillis).atZone(zone).toOffsetDateTime().toString();
+    }
+}
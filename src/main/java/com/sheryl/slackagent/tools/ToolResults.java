@@ -0,0 +1,81 @@
+package com.sheryl.slackagent.tools;
+
+import java.util.*;
+
+// Compact text encoding for tool results fed back into the model, capped at a token budget
+public final class ToolResults {
+
+    public static final int DEFAULT_TOKEN_BUDGET = 1500;
+
+    private static final int MAX_VALUE_CHARS = 160;
+
+    private static final Map<String, String> SHORT_KEYS = Map.of(
+            "subject", "subj",
+            "snippet", "snip",
+            "summary", "sum",
+            "description", "desc",
+            "message", "msg",
+            "link", "url"
+    );
+
+    // Identifiers the model needs verbatim for follow-up calls
+    private static final Set<String> UNTRIMMED_KEYS = Set.of("id", "link", "start", "end");
+
+    private ToolResults() {
+    }
+
+    public static String encode(Object result) {
+        return encode(result, DEFAULT_TOKEN_BUDGET);
+    }
+
+    public static String encode(Object result, int tokenBudget) {
+        int maxChars = tokenBudget * 4;
+
+        if (result == null) return "Done";
+        if (result instanceof Map<?, ?> map) return cut(record(map), maxChars);
+        if (!(result instanceof Collection<?> items)) return cut(clean(String.valueOf(result)), maxChars);
+        if (items.isEmpty()) return "(none)";
+
+        StringBuilder out = new StringBuilder();
+        int written = 0;
+        for (Object item : items) {
+            String line = (written + 1) + ". " + (item instanceof Map<?, ?> map ? record(map) : clean(String.valueOf(item)));
+            int remaining = items.size() - written;
+            String marker = remaining > 1 ? "\n(+" + (remaining - 1) + " more)" : "";
+
+            if (out.length() + line.length() + marker.length() + 1 > maxChars) {
+                if (written == 0) return cut(line, maxChars) + "\n(+" + (items.size() - 1) + " more)";
+                return out.append("(+").append(remaining).append(" more)").toString();
+            }
+            out.append(line).append('\n');
+            written++;
+        }
+        return out.toString().stripTrailing();
+    }
+
+    private static String record(Map<?, ?> map) {
+        List<String> keys = new ArrayList<>();
+        map.keySet().forEach(key -> keys.add(String.valueOf(key)));
+        // "id" first, then alphabetical, so the same result always encodes the same way
+        keys.sort(Comparator.comparing((String key) -> !key.equals("id")).thenComparing(Comparator.naturalOrder()));
+
+        StringJoiner joiner = new StringJoiner(" | ");
+        for (String key : keys) {
+            Object raw = map.get(key);
+            if (raw == null) continue;
+            String value = clean(String.valueOf(raw));
+            if (value.isEmpty()) continue;
+            if (!UNTRIMMED_KEYS.contains(key)) value = cut(value, MAX_VALUE_CHARS);
+            joiner.add(SHORT_KEYS.getOrDefault(key, key) + "=" + value);
+        }
+        return joiner.toString();
+    }
+
+    private static String clean(String value) {
+        return value.replaceAll("\\s+", " ").trim();
+    }
+
+    private static String cut(String value, int maxChars) {
+        return value.length() <= maxChars ? value : value.substring(0, Math.max(0, maxChars - 1)) + "…";
+    }
+}
@@ -1,17 +1,18 @@
 package com.sheryl.slackagent.tools;
 
-import com.twilio.rest.api.v2010.account.Message;
-import com.twilio.type.PhoneNumber;
+import com.sheryl.slackagent.services.WhatsAppDispatcher;
 import org.springframework.ai.tool.annotation.Tool;
 import org.springframework.ai.tool.annotation.ToolParam;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class WhatsAppTools {
 
-    @Value("${twilio.phone.from}")
-    private String fromPhone;
+    private final WhatsAppDispatcher dispatcher;
+
+    public WhatsAppTools(WhatsAppDispatcher dispatcher) {
+        this.dispatcher = dispatcher;
+    }
 
     @Tool(
             name = "whatsapp-message-tool",
@@ -21,11 +22,7 @@ public class WhatsAppTools {
             @ToolParam(description = "The WhatsApp user's number") String to,
             @ToolParam(description = "The message text to send") String body
     ) {
-        Message.creator(
-                new PhoneNumber("whatsapp:" + to),
-                new PhoneNumber("whatsapp:" + fromPhone),
-                body
-        ).create();
+        dispatcher.send(to, body);
     }
 
     @Tool(
@@ -36,11 +33,7 @@ public class WhatsAppTools {
             @ToolParam(description = "The WhatsApp user's number") String to,
             @ToolParam(description = "The emoji reaction") String emoji
     ) {
-        Message.creator(
-                new PhoneNumber("whatsapp:" + to),
-                new PhoneNumber("whatsapp:" + fromPhone),
-                emoji
-        ).create();
+        dispatcher.send(to, emoji);
     }
 
     @Tool(
@@ -52,13 +45,6 @@ public class WhatsAppTools {
             @ToolParam(description = "The URL of the file to send") String fileUrl,
             @ToolParam(description = "Optional caption for the file") String caption
     ) {
-
-
-        Message.creator(
-                        new PhoneNumber("whatsapp:" + to),
-                        new PhoneNumber("whatsapp:" + fromPhone),
-                        caption != null ? caption : ""
-                ).setMediaUrl(fileUrl)
-                .create();
+        dispatcher.send(to, caption != null ? caption : "", fileUrl);
     }
 }
@@ -0,0 +1,97 @@
+package com.sheryl.slackagent.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+
+    @Test
+    void rejectsOnceTheLimitIsReachedAndTheWaitRunsOut() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 2, 1, 2, 10, 10, 0);
+        AdaptiveLimiter.Permit first = limiter.acquire("a");
+        limiter.acquire("b");
+
+        assertThrows(OverloadedException.class, () -> limiter.acquire("c"));
+        assertEquals(2, limiter.inFlight());
+        assertEquals(0, limiter.queued());
+
+        first.success();
+        first.success();
+        assertEquals(1, limiter.inFlight());
+    }
+
+    @Test
+    void shrinksOnDropsDownToTheMinimum() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 10, 8, 10, 10, 10, 0);
+
+        limiter.acquire("a").dropped();
+        assertEquals(9, limiter.limit());
+
+        for (int i = 0; i < 5; i++) limiter.acquire("a").dropped();
+        assertEquals(8, limiter.limit());
+    }
+
+    @Test
+    void growsOnlyOnSuccessWhileSaturated() {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 1, 1, 4, 10, 10, 0);
+
+        limiter.acquire("a").success();
+        assertEquals(2, limiter.limit());
+
+        limiter.acquire("a").success();
+        assertEquals(2, limiter.limit());
+    }
+
+    @Test
+    void capsWaitingCallsPerUser() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 1, 1, 1, 10, 1, 5_000);
+        AdaptiveLimiter.Permit held = limiter.acquire("a");
+
+        Thread waiter = waitFor(limiter, "a", Collections.synchronizedList(new ArrayList<>()), "a1", 1);
+        OverloadedException e = assertThrows(OverloadedException.class, () -> limiter.acquire("a"));
+        assertTrue(e.getMessage().contains("too many waiting calls"));
+
+        held.success();
+        waiter.join(5_000);
+        assertEquals(0, limiter.inFlight());
+    }
+
+    @Test
+    void admitsWaitingUsersRoundRobin() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter("test", 1, 1, 1, 10, 10, 5_000);
+        List<String> admitted = Collections.synchronizedList(new ArrayList<>());
+        AdaptiveLimiter.Permit held = limiter.acquire("busy");
+
+        List<Thread> waiters = List.of(
+                waitFor(limiter, "busy", admitted, "busy-1", 1),
+                waitFor(limiter, "busy", admitted, "busy-2", 2),
+                waitFor(limiter, "quiet", admitted, "quiet-1", 3));
+
+        held.success();
+        for (Thread waiter : waiters) waiter.join(5_000);
+
+        assertEquals(List.of("busy-1", "quiet-1", "busy-2"), admitted);
+        assertEquals(0, limiter.inFlight());
+    }
+
+    // Starts a caller that records its label once admitted, and returns after it is queued
+    private static Thread waitFor(AdaptiveLimiter limiter, String user, List<String> admitted, String label,
+                                  int queuedAfter) throws InterruptedException {
+        Thread thread = Thread.ofVirtual().start(() -> {
+            AdaptiveLimiter.Permit permit = limiter.acquire(user);
+            admitted.add(label);
+            permit.success();
+        });
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (limiter.queued() < queuedAfter) {
+            assertTrue(System.currentTimeMillis() < deadline, "caller never queued");
+            Thread.sleep(5);
+        }
+        return thread;
+    }
+}
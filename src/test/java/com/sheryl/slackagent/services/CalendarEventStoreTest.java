@@ -0,0 +1,73 @@
+package com.sheryl.slackagent.services;
+
+import com.google.api.client.util.DateTime;
+import com.google.api.services.calendar.model.Event;
+import com.google.api.services.calendar.model.EventDateTime;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CalendarEventStoreTest {
+
+    private static final String USER = "+15550000000";
+    private static final long NOW = System.currentTimeMillis();
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final CalendarEventStore store = new CalendarEventStore(null);
+
+    @Test
+    void upcomingIncludesLongRunningEventsThatStartedDaysAgo() {
+        store.put(USER, event("conference", NOW - 3 * DAY, NOW + DAY));
+        store.put(USER, event("standup", NOW + HOUR, NOW + 2 * HOUR));
+        store.put(USER, event("yesterday", NOW - DAY, NOW - DAY + HOUR));
+
+        assertEquals(List.of("conference", "standup"), ids(store.upcoming(USER, NOW, 10)));
+    }
+
+    @Test
+    void upcomingIsInStartOrderUpToTheLimit() {
+        store.put(USER, event("later", NOW + 3 * HOUR, NOW + 4 * HOUR));
+        store.put(USER, event("sooner", NOW + HOUR, NOW + 2 * HOUR));
+        store.put(USER, event("ongoing", NOW - HOUR, NOW + HOUR));
+
+        assertEquals(List.of("ongoing", "sooner"), ids(store.upcoming(USER, NOW, 2)));
+    }
+
+    @Test
+    void removedEventsAreGone() {
+        store.put(USER, event("cancelled", NOW + HOUR, NOW + 2 * HOUR));
+        store.remove(USER, "cancelled");
+
+        assertEquals(List.of(), ids(store.upcoming(USER, NOW, 10)));
+    }
+
+    @Test
+    void searchMatchesKeywordsAnywhereInTheTitle() {
+        store.put(USER, event("Birthday party", NOW + HOUR, NOW + 2 * HOUR));
+        store.put(USER, event("Sunday standup", NOW + 2 * HOUR, NOW + 3 * HOUR));
+        store.put(USER, event("Team party", NOW + 3 * HOUR, NOW + 4 * HOUR));
+
+        assertEquals(List.of("Birthday party", "Sunday standup"), ids(store.search(USER, "day", null, 10)));
+        assertEquals(List.of("Birthday party"), ids(store.search(USER, "day par", null, 10)));
+        assertEquals(List.of("Birthday party"), ids(store.search(USER, "Birth", null, 10)));
+        assertEquals(List.of("Birthday party", "Team party"), ids(store.search(USER, "party", null, 10)));
+        assertEquals(List.of("Team party"), ids(store.search(USER, "am pa", null, 10)));
+        assertEquals(List.of(), ids(store.search(USER, "lunch", null, 10)));
+    }
+
+    private static Event event(String id, long start, long end) {
+        return new Event()
+                .setId(id)
+                .setSummary(id)
+                .setStart(new EventDateTime().setDateTime(new DateTime(start)))
+                .setEnd(new EventDateTime().setDateTime(new DateTime(end)));
+    }
+
+    private static List<String> ids(List<Event> events) {
+        return events.stream().map(Event::getId).toList();
+    }
+}
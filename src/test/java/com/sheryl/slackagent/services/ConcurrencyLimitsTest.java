@@ -0,0 +1,136 @@
+package com.sheryl.slackagent.services;
+
+import com.google.api.client.http.HttpRequestInitializer;
+import com.google.api.client.http.LowLevelHttpRequest;
+import com.google.api.client.http.LowLevelHttpResponse;
+import com.google.api.client.json.gson.GsonFactory;
+import com.google.api.client.testing.http.MockHttpTransport;
+import com.google.api.client.testing.http.MockLowLevelHttpRequest;
+import com.google.api.client.testing.http.MockLowLevelHttpResponse;
+import com.google.api.services.gmail.Gmail;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConcurrencyLimitsTest {
+
+    private static final String BOUNDARY = "batch_test";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Deque<MockLowLevelHttpResponse> responses = new ArrayDeque<>();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final List<Double> inFlightDuringCalls = new ArrayList<>();
+
+    private ConcurrencyLimits limits;
+
+    @BeforeEach
+    void setUp() {
+        limits = new ConcurrencyLimits(new MockEnvironment()
+                .withProperty("sheryl.limits.gmail.initial-limit", "2")
+                .withProperty("sheryl.limits.gmail.max-limit", "2")
+                .withProperty("sheryl.limits.gmail.max-wait-ms", "100"), registry);
+    }
+
+    @Test
+    void batchPartsShareTheSlotOfTheBatchCall() throws Exception {
+        Gmail gmail = gmail(request -> {
+        });
+        MailboxIndex index = new MailboxIndex(null);
+
+        for (int round = 0; round < 3; round++) {
+            responses.add(batchResponse(5));
+
+            assertEquals(5, index.fetch(gmail, List.of("m0", "m1", "m2", "m3", "m4")).size());
+            assertEquals(0, inFlight());
+        }
+        assertEquals(3, calls.get());
+        assertEquals(List.of(1.0, 1.0, 1.0), inFlightDuringCalls);
+    }
+
+    @Test
+    void eachAttemptTakesItsOwnSlot() throws Exception {
+        // Stands in for the credential's handler, which retries after refreshing the token
+        Gmail gmail = gmail(request -> request.setUnsuccessfulResponseHandler((r, response, supportsRetry) -> supportsRetry));
+        responses.add(new MockLowLevelHttpResponse().setStatusCode(503));
+        responses.add(json("{\"emailAddress\":\"user@example.com\"}"));
+
+        assertEquals("user@example.com", gmail.users().getProfile("me").execute().getEmailAddress());
+        assertEquals(2, calls.get());
+        assertEquals(List.of(1.0, 1.0), inFlightDuringCalls);
+        assertEquals(0, inFlight());
+    }
+
+    @Test
+    void failedRequestsGiveTheirSlotBack() throws Exception {
+        Gmail gmail = gmail(request -> {
+        });
+
+        for (int i = 0; i < 5; i++) {
+            responses.add(new MockLowLevelHttpResponse().setStatusCode(404));
+            try {
+                gmail.users().getProfile("me").execute();
+            } catch (Exception ignored) {
+                // Only the slot matters here
+            }
+        }
+        assertEquals(0, inFlight());
+        assertEquals(2, limit());
+    }
+
+    private Gmail gmail(HttpRequestInitializer delegate) {
+        MockHttpTransport transport = new MockHttpTransport() {
+            @Override
+            public LowLevelHttpRequest buildRequest(String method, String url) {
+                return new MockLowLevelHttpRequest(url) {
+                    @Override
+                    public LowLevelHttpResponse execute() {
+                        calls.incrementAndGet();
+                        inFlightDuringCalls.add(inFlight());
+                        return responses.remove();
+                    }
+                };
+            }
+        };
+        return new Gmail.Builder(transport, GsonFactory.getDefaultInstance(),
+                limits.limited(ConcurrencyLimits.GMAIL, "+15550000000", delegate))
+                .setApplicationName("test")
+                .build();
+    }
+
+    private double inFlight() {
+        return registry.get("sheryl.limits.in-flight").tag("downstream", ConcurrencyLimits.GMAIL).gauge().value();
+    }
+
+    private double limit() {
+        return registry.get("sheryl.limits.limit").tag("downstream", ConcurrencyLimits.GMAIL).gauge().value();
+    }
+
+    private static MockLowLevelHttpResponse json(String body) {
+        return new MockLowLevelHttpResponse().setContentType("application/json; charset=UTF-8").setContent(body);
+    }
+
+    private static MockLowLevelHttpResponse batchResponse(int parts) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < parts; i++) {
+            body.append("--").append(BOUNDARY).append("\r\n")
+                    .append("Content-Type: application/http\r\n")
+                    .append("Content-ID: <response-").append(i + 1).append(">\r\n\r\n")
+                    .append("HTTP/1.1 200 OK\r\n")
+                    .append("Content-Type: application/json; charset=UTF-8\r\n\r\n")
+                    .append("{\"id\":\"m").append(i).append("\"}\r\n");
+        }
+        body.append("--").append(BOUNDARY).append("--\r\n");
+        return new MockLowLevelHttpResponse()
+                .setContentType("multipart/mixed; boundary=" + BOUNDARY)
+                .setContent(body.toString());
+    }
+}
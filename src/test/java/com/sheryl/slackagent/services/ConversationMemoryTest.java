@@ -0,0 +1,50 @@
+package com.sheryl.slackagent.services;
+
+import com.sheryl.slackagent.services.ConversationMemory.Entry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.MessageType;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ConversationMemoryTest {
+
+    @Test
+    void keepsTheNewestEntriesThatFitOpeningOnAUserMessage() {
+        List<Entry> entries = List.of(
+                user("a".repeat(400)), assistant("b".repeat(400)),
+                user("c".repeat(40)), assistant("d".repeat(40)),
+                user("e".repeat(40)));
+
+        // 10 + 10 + 10 tokens fit, the 100-token reply before them doesn't
+        assertEquals(2, ConversationMemory.keepFrom(entries, 50));
+        assertEquals(0, ConversationMemory.keepFrom(entries, 1000));
+        // The assistant reply at 3 fits but can't open the window
+        assertEquals(4, ConversationMemory.keepFrom(entries, 15));
+    }
+
+    @Test
+    void keepsTheNewestUserMessageEvenWhenItAloneIsOverBudget() {
+        List<Entry> pasted = List.of(user("hi"), assistant("hello"), user("x".repeat(20_000)));
+        assertEquals(2, ConversationMemory.keepFrom(pasted, 100));
+
+        List<Entry> longReply = List.of(user("hi"), assistant("hello"), user("summarize it"), assistant("y".repeat(20_000)));
+        assertEquals(2, ConversationMemory.keepFrom(longReply, 100));
+    }
+
+    @Test
+    void keepsTheNewestEntryWithoutAnyUserMessage() {
+        List<Entry> digests = List.of(assistant("z".repeat(20_000)), assistant("w".repeat(20_000)));
+        assertEquals(1, ConversationMemory.keepFrom(digests, 100));
+        assertEquals(0, ConversationMemory.keepFrom(List.of(), 100));
+    }
+
+    private static Entry user(String text) {
+        return new Entry(MessageType.USER, text);
+    }
+
+    private static Entry assistant(String text) {
+        return new Entry(MessageType.ASSISTANT, text);
+    }
+}
@@ -0,0 +1,65 @@
+package com.sheryl.slackagent.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntentRouterTest {
+
+    @Test
+    void normalizesFillerPunctuationAndApostrophes() {
+        assertEquals("check my inbox", IntentRouter.normalize("  Please,   check my inbox?! "));
+        assertEquals("what's on today", IntentRouter.normalize("Hey Sheryl, What’s on today."));
+        assertEquals("any new emails", IntentRouter.normalize("ok can you any new emails"));
+    }
+
+    @Test
+    void recognisesUnreadRequests() {
+        assertMatches(IntentRouter.UNREAD, "Any new emails?");
+        assertMatches(IntentRouter.UNREAD, "Do I have unread messages");
+        assertMatches(IntentRouter.UNREAD, "show me my unread e-mails in my inbox");
+        assertMatches(IntentRouter.UNREAD, "Hi, check my mail");
+
+        assertNoMatch(IntentRouter.UNREAD, "any new emails from Bob?");
+        assertNoMatch(IntentRouter.UNREAD, "reply to the new email");
+    }
+
+    @Test
+    void recognisesTodayRequests() {
+        assertMatches(IntentRouter.TODAY, "What's on my calendar today?");
+        assertMatches(IntentRouter.TODAY, "what do i have on today");
+        assertMatches(IntentRouter.TODAY, "Any meetings today");
+        assertMatches(IntentRouter.TODAY, "today's schedule");
+
+        assertNoMatch(IntentRouter.TODAY, "what's on my calendar tomorrow");
+        assertNoMatch(IntentRouter.TODAY, "cancel my meetings today");
+    }
+
+    @Test
+    void capturesTheTargetOfMarkReadAndStar() {
+        assertEquals("that", group(IntentRouter.MARK_READ, "Mark that as read"));
+        assertEquals("all of them", group(IntentRouter.MARK_READ, "please mark all of them read"));
+        assertEquals("it", group(IntentRouter.STAR, "Star it!"));
+        assertEquals("these", group(IntentRouter.STAR, "flag these"));
+
+        assertNoMatch(IntentRouter.MARK_READ, "mark the email from Alice as read");
+        assertNoMatch(IntentRouter.STAR, "star the one from Bob");
+    }
+
+    private static void assertMatches(Pattern pattern, String text) {
+        assertTrue(pattern.matcher(IntentRouter.normalize(text)).matches(), text);
+    }
+
+    private static void assertNoMatch(Pattern pattern, String text) {
+        assertFalse(pattern.matcher(IntentRouter.normalize(text)).matches(), text);
+    }
+
+    private static String group(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(IntentRouter.normalize(text));
+        assertTrue(matcher.matches(), text);
+        return matcher.group(1);
+    }
+}
@@ -0,0 +1,84 @@
+package com.sheryl.slackagent.services;
+
+import com.sheryl.slackagent.services.MailboxIndex.IndexedMessage;
+import com.sheryl.slackagent.services.MailboxIndex.LocalQuery;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MailboxIndexTest {
+
+    private static final List<IndexedMessage> MESSAGES = List.of(
+            message("1", "Alice <alice@example.com>", "Quarterly report", 300, "INBOX", "UNREAD"),
+            message("2", "Bob <bob@example.com>", "Lunch?", 200, "INBOX", "STARRED"),
+            message("3", "Alice <alice@example.com>", "Re: Quarterly report", 100, "SENT"),
+            message("4", "Spammer <spam@example.com>", "Quarterly prizes", 400, "SPAM", "UNREAD"));
+
+    @Test
+    void parsesSupportedOperators() {
+        assertEquals(List.of("1"), ids(answer("is:unread", 10, true)));
+        assertEquals(List.of("2"), ids(answer("is:starred", 10, true)));
+        assertEquals(List.of("2"), ids(answer("is:read in:inbox", 10, true)));
+        assertEquals(List.of("1", "3"), ids(answer("from:alice", 10, true)));
+        assertEquals(List.of("3"), ids(answer("subject:\"re: quarterly\"", 10, true)));
+        assertEquals(List.of("3"), ids(answer("label:sent FROM:Alice", 10, true)));
+    }
+
+    @Test
+    void leavesEverythingElseToTheApi() {
+        assertNull(LocalQuery.parse("quarterly report"));
+        assertNull(LocalQuery.parse("is:snoozed"));
+        assertNull(LocalQuery.parse("label:Receipts"));
+        assertNull(LocalQuery.parse("newer_than:2d"));
+        assertNull(LocalQuery.parse("from:"));
+    }
+
+    @Test
+    void newestFirstUpToTheLimitWithoutSpamOrTrash() {
+        assertEquals(List.of("1", "2"), ids(answer("from:example.com", 2, false)));
+    }
+
+    @Test
+    void shortResultsFromAPartialIndexGoToTheApi() {
+        assertTrue(answer("from:alice", 10, false).isEmpty());
+        // Unread mail older than the indexed window would be missing too
+        assertTrue(answer("is:unread", 10, false).isEmpty());
+        assertTrue(answer("in:inbox", 10, false).isEmpty());
+
+        assertEquals(List.of("1"), ids(answer("is:unread", 1, false)));
+        assertEquals(List.of("1"), ids(answer("is:unread", 10, true)));
+    }
+
+    @Test
+    void messagesOlderThanTheWindowDontPassForTheNewest() {
+        // Message 3 came in from an API search and is older than the indexed window
+        assertEquals(List.of("1"), ids(answer("from:alice", 1, false, 250)));
+        assertTrue(answer("label:sent", 1, false, 250).isEmpty());
+        assertTrue(answer("subject:quarterly", 2, false, 250).isEmpty());
+
+        assertEquals(List.of("3"), ids(answer("label:sent", 1, true, 250)));
+    }
+
+    private static Optional<List<IndexedMessage>> answer(String query, int limit, boolean complete) {
+        return answer(query, limit, complete, 0);
+    }
+
+    private static Optional<List<IndexedMessage>> answer(String query, int limit, boolean complete, long windowStart) {
+        LocalQuery parsed = LocalQuery.parse(query);
+        assertNotNull(parsed, query);
+        return MailboxIndex.answer(MESSAGES, parsed, limit, complete, windowStart);
+    }
+
+    private static List<String> ids(Optional<List<IndexedMessage>> result) {
+        assertTrue(result.isPresent());
+        return result.get().stream().map(IndexedMessage::id).toList();
+    }
+
+    private static IndexedMessage message(String id, String from, String subject, long date, String... labels) {
+        return new IndexedMessage(id, "t" + id, from, subject, Set.of(labels), date, "");
+    }
+}
@@ -0,0 +1,81 @@
+package com.sheryl.slackagent.services;
+
+import com.sheryl.slackagent.services.ModelTiers.Tier;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ModelTiersTest {
+
+    private static final String CLIENT = "whatsapp";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ModelTiers tiers = new ModelTiers(registry);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(tiers, "fastModel", "fast-model");
+        ReflectionTestUtils.setField(tiers, "simpleTurnMaxChars", 120);
+    }
+
+    @Test
+    void shortSingleStepTurnsGoToTheFastTier() {
+        assertEquals(Tier.FAST, tiers.classify(CLIENT, "Any new mail?"));
+        assertEquals(Tier.FAST, tiers.classify(CLIENT, "thanks!"));
+        assertEquals(Tier.FAST, tiers.classify(CLIENT, "  remind me at 5 to call mom  "));
+    }
+
+    @Test
+    void multiStepLongOrMultiSentenceTurnsGoToTheLargeTier() {
+        assertEquals(Tier.LARGE, tiers.classify(CLIENT, "reply to Alice and then archive it"));
+        assertEquals(Tier.LARGE, tiers.classify(CLIENT, "find the invoice and forward it to Bob"));
+        assertEquals(Tier.LARGE, tiers.classify(CLIENT, "mark all of them as read"));
+        assertEquals(Tier.LARGE, tiers.classify(CLIENT, "Hi. What's on tomorrow?"));
+        assertEquals(Tier.LARGE, tiers.classify(CLIENT, "x".repeat(121)));
+        assertEquals(Tier.LARGE, tiers.classify(CLIENT, null));
+    }
+
+    @Test
+    void everythingGoesLargeWithoutAFastModel() {
+        ReflectionTestUtils.setField(tiers, "fastModel", "");
+
+        assertEquals(Tier.LARGE, tiers.classify(CLIENT, "thanks!"));
+    }
+
+    @Test
+    void countsRoutingDecisions() {
+        tiers.classify(CLIENT, "thanks!");
+        tiers.classify(CLIENT, "thanks!");
+        tiers.classify(CLIENT, "reply to Alice and then archive it");
+
+        assertEquals(2, registry.counter("sheryl.model.routing", "client", CLIENT, "tier", "fast").count());
+        assertEquals(1, registry.counter("sheryl.model.routing", "client", CLIENT, "tier", "large").count());
+    }
+
+    @Test
+    void fastFailuresRetryOnTheLargeTierOnlyWhenSafe() {
+        List<Tier> attempts = new ArrayList<>();
+        String reply = tiers.call(CLIENT, Tier.FAST, tier -> {
+            attempts.add(tier);
+            if (tier == Tier.FAST) throw new IllegalStateException("throttled");
+            return "ok";
+        }, () -> true);
+
+        assertEquals("ok", reply);
+        assertEquals(List.of(Tier.FAST, Tier.LARGE), attempts);
+        assertEquals(1, registry.counter("sheryl.model.fallbacks", "client", CLIENT).count());
+
+        assertThrows(IllegalStateException.class, () -> tiers.call(CLIENT, Tier.FAST, tier -> {
+            throw new IllegalStateException("a tool already ran");
+        }, () -> false));
+        assertThrows(OverloadedException.class, () -> tiers.call(CLIENT, Tier.FAST, tier -> {
+            throw new OverloadedException("bedrock", "wait queue is full");
+        }, () -> true));
+    }
+}
@@ -0,0 +1,51 @@
+package com.sheryl.slackagent.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StreamChunkerTest {
+
+    private final StreamChunker chunker = new StreamChunker();
+
+    @Test
+    void sendsTheFirstSentenceAsSoonAsItIsComplete() {
+        assertEquals(List.of(), chunker.accept("Hello"));
+        assertEquals(List.of(), chunker.accept(" there."));
+        assertEquals(List.of("Hello there."), chunker.accept(" How"));
+        assertEquals("How", chunker.finish());
+    }
+
+    @Test
+    void thenWaitsForWholeParagraphs() {
+        assertEquals(List.of("Sure!"), chunker.accept("Sure! "));
+        assertEquals(List.of(), chunker.accept("You have two meetings. "));
+        assertEquals(List.of(), chunker.accept("The first is at 9."));
+        assertEquals(List.of("You have two meetings. The first is at 9."), chunker.accept("\n\nThe second"));
+        assertEquals(List.of(), chunker.accept(" is at 11."));
+        assertEquals("The second is at 11.", chunker.finish());
+        assertEquals("", chunker.finish());
+    }
+
+    @Test
+    void cutsLongParagraphsAtSentencesWithinTheBodyLimit() {
+        chunker.accept("Here you go. ");
+
+        List<String> parts = new ArrayList<>(chunker.accept("This is sentence number one. ".repeat(80)));
+        assertFalse(parts.isEmpty());
+        for (String part : parts) {
+            assertTrue(part.length() <= WhatsAppDispatcher.MAX_BODY_LENGTH);
+            assertTrue(part.endsWith("."), part);
+        }
+    }
+
+    @Test
+    void ignoresEmptyTokens() {
+        assertEquals(List.of(), chunker.accept(null));
+        assertEquals(List.of(), chunker.accept(""));
+        assertEquals("", chunker.finish());
+    }
+}
@@ -0,0 +1,57 @@
+package com.sheryl.slackagent.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    private static final long TICK_MS = 20;
+
+    @Test
+    void deadlinesWithinTheCurrentTickAreDueNow() {
+        long now = System.currentTimeMillis();
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 4, now);
+
+        assertFalse(wheel.add("past", now - 1_000));
+        assertFalse(wheel.add("now", now - (now % TICK_MS)));
+        assertTrue(wheel.add("next tick", now - (now % TICK_MS) + TICK_MS));
+    }
+
+    @Test
+    void idleWheelExpiresNothing() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 4, System.currentTimeMillis());
+        List<String> expired = new ArrayList<>();
+
+        wheel.advance(30, expired::add);
+        assertEquals(List.of(), expired);
+    }
+
+    @Test
+    void expiresEntriesAcrossLevelsInDeadlineOrderAndNotEarly() throws Exception {
+        long now = System.currentTimeMillis();
+        // Four buckets of 20 ms: the later deadlines start out on the second and third levels
+        TimingWheel<String> wheel = new TimingWheel<>(TICK_MS, 4, now);
+        Map<String, Long> deadlines = Map.of("soon", now + 50, "later", now + 150, "latest", now + 500);
+        deadlines.forEach((value, deadline) -> assertTrue(wheel.add(value, deadline)));
+
+        List<String> expired = new ArrayList<>();
+        Map<String, Long> firedAt = new ConcurrentHashMap<>();
+        long giveUp = now + 5_000;
+        while (expired.size() < deadlines.size() && System.currentTimeMillis() < giveUp) {
+            wheel.advance(100, value -> {
+                expired.add(value);
+                firedAt.put(value, System.currentTimeMillis());
+            });
+        }
+
+        assertEquals(List.of("soon", "later", "latest"), expired);
+        deadlines.forEach((value, deadline) ->
+                assertTrue(firedAt.get(value) >= deadline - TICK_MS, value + " expired more than a tick early"));
+    }
+}
@@ -0,0 +1,46 @@
+package com.sheryl.slackagent.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void startsFullAndRefusesWhenEmpty() {
+        TokenBucket bucket = new TokenBucket(1, 3);
+
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void acquireWaitsForTheNextToken() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        assertTrue(bucket.tryAcquire());
+
+        long started = System.nanoTime();
+        bucket.acquire();
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        // One token every 100 ms
+        assertTrue(waited >= 80, "waited " + waited + " ms");
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    void refillsUpToCapacityOnly() throws InterruptedException {
+        TokenBucket bucket = new TokenBucket(100, 2);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+
+        Thread.sleep(100);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+}
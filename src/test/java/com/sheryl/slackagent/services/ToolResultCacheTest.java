@@ -0,0 +1,93 @@
+package com.sheryl.slackagent.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class ToolResultCacheTest {
+
+    private static final String USER = "+15550000000";
+    private static final TypeReference<String> STRING = new TypeReference<>() {
+    };
+
+    private final StringRedisTemplate redis = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final ValueOperations<String, String> values = mock(ValueOperations.class);
+    private final RedisMessageListenerContainer listenerContainer = mock(RedisMessageListenerContainer.class);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private ToolResultCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(redis.opsForValue()).thenReturn(values);
+        cache = new ToolResultCache(redis, new ObjectMapper(), new MockEnvironment(), new SimpleMeterRegistry(), listenerContainer);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "defaultTtl", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(cache, "nearSize", 100);
+    }
+
+    @Test
+    void nearHitsDontTouchRedis() throws Exception {
+        assertEquals("result 1", list());
+        clearInvocations(redis, values);
+
+        assertEquals("result 1", list());
+        assertEquals(1, loads.get());
+        verifyNoInteractions(redis, values);
+    }
+
+    @Test
+    void invalidatingHereRetiresNearEntriesRightAway() throws Exception {
+        list();
+        cache.invalidate(USER, ToolResultCache.GMAIL);
+
+        assertEquals("result 2", list());
+        verify(values).increment("sheryl:cache:gen:" + USER + ":gmail");
+        verify(redis).convertAndSend("sheryl:cache:invalidated", USER + ":gmail");
+    }
+
+    @Test
+    void invalidationsFromOtherInstancesRetireNearEntries() throws Exception {
+        cache.start();
+        ArgumentCaptor<MessageListener> listener = ArgumentCaptor.forClass(MessageListener.class);
+        verify(listenerContainer).addMessageListener(listener.capture(), any(Topic.class));
+
+        list();
+        listener.getValue().onMessage(invalidated(USER + ":calendar"), null);
+        assertEquals("result 1", list());
+
+        listener.getValue().onMessage(invalidated(USER + ":gmail"), null);
+        assertEquals("result 2", list());
+    }
+
+    private static DefaultMessage invalidated(String scope) {
+        return new DefaultMessage("sheryl:cache:invalidated".getBytes(StandardCharsets.UTF_8),
+                scope.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String list() throws Exception {
+        return cache.get(USER, ToolResultCache.GMAIL, "list_gmail_messages", List.of("is:unread", 10), STRING,
+                () -> "result " + loads.incrementAndGet());
+    }
+}
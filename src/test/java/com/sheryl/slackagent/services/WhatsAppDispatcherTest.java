@@ -0,0 +1,48 @@
+package com.sheryl.slackagent.services;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WhatsAppDispatcherTest {
+
+    private static final int MAX = WhatsAppDispatcher.MAX_BODY_LENGTH;
+
+    @Test
+    void shortBodiesGoOutAsIs() {
+        assertEquals(List.of("Hello!"), WhatsAppDispatcher.split("  Hello!\n"));
+        assertEquals(List.of(""), WhatsAppDispatcher.split(""));
+    }
+
+    @Test
+    void prefersParagraphBoundaries() {
+        String first = "a".repeat(1000);
+        String second = "b".repeat(1000);
+
+        assertEquals(List.of(first, second), WhatsAppDispatcher.split(first + "\n\n" + second));
+    }
+
+    @Test
+    void fallsBackToSentencesThenWords() {
+        String sentence = "This is a sentence. ";
+        String body = sentence.repeat(120).strip();
+
+        List<String> parts = WhatsAppDispatcher.split(body);
+        assertTrue(parts.size() > 1);
+        for (String part : parts) {
+            assertTrue(part.length() <= MAX);
+            assertTrue(part.endsWith("."), part);
+        }
+        assertEquals(body.replace(" ", ""), String.join("", parts).replace(" ", ""));
+    }
+
+    @Test
+    void cutsTextWithoutAnyBoundary() {
+        String body = "x".repeat(MAX * 2 + 10);
+
+        List<String> parts = WhatsAppDispatcher.split(body);
+        assertEquals(List.of("x".repeat(MAX), "x".repeat(MAX), "x".repeat(10)), parts);
+    }
+}
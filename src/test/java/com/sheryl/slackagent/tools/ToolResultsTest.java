@@ -0,0 +1,65 @@
+package com.sheryl.slackagent.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ToolResultsTest {
+
+    @Test
+    void encodesScalarsAndEmptyResults() {
+        assertEquals("Done", ToolResults.encode(null));
+        assertEquals("(none)", ToolResults.encode(List.of()));
+        assertEquals("Sent to bob", ToolResults.encode("  Sent\n\tto   bob "));
+    }
+
+    @Test
+    void encodesRecordsIdFirstWithShortKeys() {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("subject", "Lunch\non Friday?");
+        message.put("from", "Bob");
+        message.put("id", "m1");
+        message.put("snippet", "");
+        message.put("labels", null);
+
+        assertEquals("id=m1 | from=Bob | subj=Lunch on Friday?", ToolResults.encode(message));
+    }
+
+    @Test
+    void trimsLongValuesButNotIdentifiers() {
+        String longText = "x".repeat(500);
+        String encoded = ToolResults.encode(Map.of("id", longText, "description", longText));
+
+        assertTrue(encoded.startsWith("id=" + longText + " | desc="));
+        String description = encoded.substring(encoded.indexOf("desc=") + "desc=".length());
+        assertEquals(160, description.length());
+        assertTrue(description.endsWith("…"));
+    }
+
+    @Test
+    void numbersItemsAndCountsWhatDidNotFit() {
+        List<Map<String, String>> items = new ArrayList<>();
+        for (int i = 0; i < 10; i++) items.add(Map.of("id", "m" + i, "subject", "x".repeat(30)));
+
+        assertEquals("1. id=m0 | subj=" + "x".repeat(30) + "\n2. id=m1 | subj=" + "x".repeat(30),
+                ToolResults.encode(items.subList(0, 2)));
+
+        String encoded = ToolResults.encode(items, 25);
+        assertTrue(encoded.length() <= 100);
+        assertTrue(encoded.startsWith("1. id=m0 | subj="));
+        assertTrue(encoded.endsWith("(+9 more)"));
+    }
+
+    @Test
+    void cutsAFirstItemThatAloneIsOverBudget() {
+        List<Map<String, String>> items = List.of(Map.of("id", "m0", "subject", "x".repeat(100)), Map.of("id", "m1"));
+
+        String encoded = ToolResults.encode(items, 5);
+        assertEquals("1. id=m0 | subj=xxx…\n(+1 more)", encoded);
+    }
+}